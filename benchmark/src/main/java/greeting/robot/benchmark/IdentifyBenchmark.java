@@ -0,0 +1,105 @@
+package greeting.robot.benchmark;
+
+import greeting.robot.data.api.Result;
+import greeting.robot.server.gallery.Gallery;
+import greeting.robot.server.gallery.GalleryProperties;
+import greeting.robot.server.gallery.GalleryScanner;
+import greeting.robot.server.gallery.LiveGallery;
+import greeting.robot.server.gallery.Matcher;
+import greeting.robot.server.gallery.SimilarityMetric;
+import greeting.robot.server.gallery.SubjectTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Identification of one descriptor against a synthetic gallery, through the same
+ * {@link LiveGallery} that {@code DescriptorService.identify} delegates to.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g"})
+public class IdentifyBenchmark {
+    private static final int QUERIES = 64;
+    private static final int MARKS_PER_SUBJECT = 10;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    private int size;
+
+    @Param("128")
+    private int dimension;
+
+    /**
+     * gallery.quantization of the exact scan: NONE, INT8 or FLOAT16.
+     */
+    @Param("NONE")
+    private GalleryProperties.Quantization quantization;
+
+    private GalleryScanner scanner;
+    private LiveGallery liveGallery;
+    private float[][] queries;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        float[] vectors = new float[size * dimension];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = (float) random.nextGaussian();
+        }
+        int subjectCount = Math.max(1, size / MARKS_PER_SUBJECT);
+        UUID[] ids = new UUID[subjectCount];
+        String[] names = new String[subjectCount];
+        for (int i = 0; i < subjectCount; i++) {
+            ids[i] = new UUID(0, i);
+            names[i] = "subject-" + i;
+        }
+        int[] subjectIndices = new int[size];
+        for (int row = 0; row < size; row++) {
+            subjectIndices[row] = row % subjectCount;
+        }
+        Gallery gallery = Gallery.of(dimension, vectors, subjectIndices, new SubjectTable(ids, names));
+
+        GalleryProperties properties = new GalleryProperties();
+        properties.setQuantization(quantization);
+        scanner = GalleryScanner.create(properties);
+        liveGallery = new LiveGallery(Matcher.build(gallery, SimilarityMetric.COSINE, properties),
+                properties.getCompactThreshold());
+
+        queries = new float[QUERIES][dimension];
+        for (float[] query : queries) {
+            for (int i = 0; i < dimension; i++) {
+                query[i] = (float) random.nextGaussian();
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        liveGallery.close();
+        scanner.preDestroy();
+    }
+
+    @Benchmark
+    public List<Result> identifyTop3() {
+        float[] query = queries[next++ & (QUERIES - 1)];
+        return liveGallery.identify(query, 3, Float.NEGATIVE_INFINITY, scanner);
+    }
+}
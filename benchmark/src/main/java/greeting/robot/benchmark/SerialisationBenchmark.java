@@ -0,0 +1,89 @@
+package greeting.robot.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import greeting.robot.data.api.ChannelResponse;
+import greeting.robot.data.api.ErrorResult;
+import greeting.robot.data.api.ImageResult;
+import greeting.robot.data.api.Result;
+import greeting.robot.data.api.ResultCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering of the responses the server sends: the JSON of {@code /uploadFile} (top 3
+ * {@link Result}s or an {@link ErrorResult}) and its {@link ResultCodec} alternative, an NDJSON line
+ * of {@code /uploadFiles} and a binary channel frame, all for the same results.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerialisationBenchmark {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+    private final DataOutputStream out = new DataOutputStream(bytes);
+    private List<Result> results;
+    private ErrorResult errorResult;
+    private ImageResult imageResult;
+    private ChannelResponse channelResponse;
+
+    @Setup
+    public void setUp() {
+        results = Arrays.asList(Result.of("Jan Kowalski", 0.93f), Result.of("Anna Nowak", 0.71f),
+                Result.of("Piotr Wiśniewski", 0.64f));
+        errorResult = new ErrorResult();
+        errorResult.setMessage("No faces found");
+        imageResult = ImageResult.of(7, "face-7.jpg", results);
+        channelResponse = ChannelResponse.ok(7, results);
+    }
+
+    @Benchmark
+    public String resultsToJson() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(results);
+    }
+
+    @Benchmark
+    public byte[] resultsToJsonBytes() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(results);
+    }
+
+    @Benchmark
+    public byte[] resultsToBinary() {
+        return ResultCodec.encode(results);
+    }
+
+    @Benchmark
+    public String errorResultToJson() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(errorResult);
+    }
+
+    @Benchmark
+    public String imageResultToNdjsonLine() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(imageResult) + "\n";
+    }
+
+    @Benchmark
+    public int resultsToChannelFrame() throws IOException {
+        bytes.reset();
+        channelResponse.writeTo(out);
+        return bytes.size();
+    }
+}
@@ -0,0 +1,76 @@
+package greeting.robot.benchmark;
+
+import greeting.robot.data.api.Result;
+import greeting.robot.server.gallery.TopK;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeping the 3 best of {@code size} scores: the original sort of one {@link Result} per gallery
+ * row followed by {@code subList(0, 3)}, against the bounded {@link TopK} heap used now.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopKBenchmark {
+    private static final int K = 3;
+
+    @Param({"1000", "100000"})
+    private int size;
+
+    private float[] scores;
+    private String[] names;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        scores = new float[size];
+        names = new String[size];
+        for (int i = 0; i < size; i++) {
+            scores[i] = random.nextFloat();
+            names[i] = "subject-" + i;
+        }
+    }
+
+    @Benchmark
+    public List<Result> sortAndTrim() {
+        List<Result> results = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            results.add(Result.of(names[i], scores[i]));
+        }
+        results.sort(Comparator.reverseOrder());
+        return results.subList(0, Math.min(K, results.size()));
+    }
+
+    @Benchmark
+    public List<Result> boundedHeap() {
+        TopK top = new TopK(K, Float.NEGATIVE_INFINITY);
+        for (int i = 0; i < size; i++) {
+            top.offer(i, scores[i]);
+        }
+        top.sort();
+        List<Result> results = new ArrayList<>(top.size());
+        for (int i = 0; i < top.size(); i++) {
+            results.add(Result.of(names[top.row(i)], top.score(i)));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,235 @@
+package greeting.robot.data.api;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Identify request sent over the persistent binary channel, see {@link ChannelResponse}.
+ * <p>
+ * A frame is a big-endian int giving the length of the rest, then the request id (long), the image
+ * format (byte), width, height (ints) and channels (byte) of raw pixels, a crop flag (byte), the
+ * face rectangle (four ints, width 0 for none), k (int), the minimum quality (float, NaN for none),
+ * the gallery name (unsigned short byte length and UTF-8, empty for the default gallery) and the
+ * image bytes up to the end of the frame.
+ */
+public class ChannelRequest {
+    /**
+     * Image in any format ImageIO decodes, e.g. JPEG.
+     */
+    public static final byte ENCODED = 0;
+    /**
+     * Uncompressed 8 bit pixels, BGR interleaved or grayscale.
+     */
+    public static final byte RAW = 1;
+    public static final int MAX_FRAME_LENGTH = 64 << 20;
+    private static final int HEADER_LENGTH = 8 + 1 + 4 + 4 + 1 + 1 + 16 + 4 + 4 + 2;
+
+    private long requestId;
+    private byte format;
+    private int width;
+    private int height;
+    private int channels;
+    private boolean crop;
+    private int faceX;
+    private int faceY;
+    private int faceWidth;
+    private int faceHeight;
+    private int k = 3;
+    private float minQuality = Float.NaN;
+    private String gallery;
+    private byte[] image;
+
+    public long getRequestId() {
+        return requestId;
+    }
+
+    public void setRequestId(long requestId) {
+        this.requestId = requestId;
+    }
+
+    public byte getFormat() {
+        return format;
+    }
+
+    public void setFormat(byte format) {
+        this.format = format;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public void setWidth(int width) {
+        this.width = width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public void setHeight(int height) {
+        this.height = height;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public void setChannels(int channels) {
+        this.channels = channels;
+    }
+
+    public boolean isCrop() {
+        return crop;
+    }
+
+    public void setCrop(boolean crop) {
+        this.crop = crop;
+    }
+
+    public int getFaceX() {
+        return faceX;
+    }
+
+    public int getFaceY() {
+        return faceY;
+    }
+
+    public int getFaceWidth() {
+        return faceWidth;
+    }
+
+    public int getFaceHeight() {
+        return faceHeight;
+    }
+
+    public void setFace(int faceX, int faceY, int faceWidth, int faceHeight) {
+        this.faceX = faceX;
+        this.faceY = faceY;
+        this.faceWidth = faceWidth;
+        this.faceHeight = faceHeight;
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    public void setK(int k) {
+        this.k = k;
+    }
+
+    public float getMinQuality() {
+        return minQuality;
+    }
+
+    public void setMinQuality(float minQuality) {
+        this.minQuality = minQuality;
+    }
+
+    /**
+     * @return null for the default gallery
+     */
+    public String getGallery() {
+        return gallery;
+    }
+
+    public void setGallery(String gallery) {
+        this.gallery = gallery;
+    }
+
+    public byte[] getImage() {
+        return image;
+    }
+
+    public void setImage(byte[] image) {
+        this.image = image;
+    }
+
+    public static ChannelRequest raw(long requestId, byte[] pixels, int width, int height, int channels) {
+        ChannelRequest request = new ChannelRequest();
+        request.requestId = requestId;
+        request.format = RAW;
+        request.width = width;
+        request.height = height;
+        request.channels = channels;
+        request.image = pixels;
+        return request;
+    }
+
+    public static ChannelRequest encoded(long requestId, byte[] image) {
+        ChannelRequest request = new ChannelRequest();
+        request.requestId = requestId;
+        request.format = ENCODED;
+        request.image = image;
+        return request;
+    }
+
+    /**
+     * Writes the frame without flushing.
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        byte[] galleryName = gallery != null ? gallery.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        if (galleryName.length > 0xffff) {
+            throw new IllegalArgumentException("Gallery name is too long");
+        }
+        out.writeInt(HEADER_LENGTH + galleryName.length + image.length);
+        out.writeLong(requestId);
+        out.writeByte(format);
+        out.writeInt(width);
+        out.writeInt(height);
+        out.writeByte(channels);
+        out.writeBoolean(crop);
+        out.writeInt(faceX);
+        out.writeInt(faceY);
+        out.writeInt(faceWidth);
+        out.writeInt(faceHeight);
+        out.writeInt(k);
+        out.writeFloat(minQuality);
+        out.writeShort(galleryName.length);
+        out.write(galleryName);
+        out.write(image);
+    }
+
+    /**
+     * @throws java.io.EOFException when the stream ends before a whole frame
+     */
+    public static ChannelRequest readFrom(DataInputStream in) throws IOException {
+        return readFrom(in, MAX_FRAME_LENGTH);
+    }
+
+    /**
+     * Reads a frame of at most {@code maxFrameLength} bytes, checked before anything is allocated for it.
+     *
+     * @throws java.io.EOFException when the stream ends before a whole frame
+     */
+    public static ChannelRequest readFrom(DataInputStream in, int maxFrameLength) throws IOException {
+        int length = in.readInt();
+        if (length < HEADER_LENGTH || length > Math.min(maxFrameLength, MAX_FRAME_LENGTH)) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        ChannelRequest request = new ChannelRequest();
+        request.requestId = in.readLong();
+        request.format = in.readByte();
+        request.width = in.readInt();
+        request.height = in.readInt();
+        request.channels = in.readByte();
+        request.crop = in.readBoolean();
+        request.faceX = in.readInt();
+        request.faceY = in.readInt();
+        request.faceWidth = in.readInt();
+        request.faceHeight = in.readInt();
+        request.k = in.readInt();
+        request.minQuality = in.readFloat();
+        byte[] galleryName = new byte[in.readUnsignedShort()];
+        if (HEADER_LENGTH + galleryName.length > length) {
+            throw new IOException("Gallery name of " + galleryName.length + " bytes exceeds the frame");
+        }
+        in.readFully(galleryName);
+        request.gallery = galleryName.length > 0 ? new String(galleryName, StandardCharsets.UTF_8) : null;
+        request.image = new byte[length - HEADER_LENGTH - galleryName.length];
+        in.readFully(request.image);
+        return request;
+    }
+}
@@ -0,0 +1,121 @@
+package greeting.robot.data.api;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Answer to a {@link ChannelRequest} with the same request id. Responses come back in completion
+ * order, so several requests may be in flight on one connection.
+ * <p>
+ * A frame is a big-endian int giving the length of the rest, then the request id (long) and the
+ * status (byte). {@link #OK} is followed by the result list, the other statuses by an error
+ * message, both encoded as by {@link ResultCodec}.
+ */
+public class ChannelResponse {
+    public static final byte OK = 0;
+    public static final byte ERROR = 1;
+    /**
+     * The server was overloaded and did not process the request, it may be retried later.
+     */
+    public static final byte BUSY = 2;
+    public static final int MAX_FRAME_LENGTH = 16 << 20;
+    private static final int HEADER_LENGTH = 8 + 1;
+
+    private long requestId;
+    private byte status;
+    private List<Result> results;
+    private String message;
+
+    public long getRequestId() {
+        return requestId;
+    }
+
+    public byte getStatus() {
+        return status;
+    }
+
+    /**
+     * Best matches, best first, when the status is {@link #OK}.
+     */
+    public List<Result> getResults() {
+        return results;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public static ChannelResponse ok(long requestId, List<Result> results) {
+        ChannelResponse response = new ChannelResponse();
+        response.requestId = requestId;
+        response.status = OK;
+        response.results = results;
+        return response;
+    }
+
+    public static ChannelResponse failed(long requestId, byte status, String message) {
+        ChannelResponse response = new ChannelResponse();
+        response.requestId = requestId;
+        response.status = status;
+        response.message = message != null ? message : "";
+        return response;
+    }
+
+    /**
+     * Writes the frame without flushing. Nothing is written when the payload cannot be encoded.
+     *
+     * @throws IllegalArgumentException when a name is too long or the frame would exceed
+     *                                  {@link #MAX_FRAME_LENGTH}
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        byte[] payload;
+        if (status == OK) {
+            payload = ResultCodec.encode(results);
+        } else {
+            ErrorResult error = new ErrorResult();
+            error.setMessage(message);
+            payload = ResultCodec.encode(error);
+        }
+        if (payload.length > MAX_FRAME_LENGTH - HEADER_LENGTH) {
+            throw new IllegalArgumentException("Response of " + payload.length + " bytes is too long");
+        }
+        out.writeInt(HEADER_LENGTH + payload.length);
+        out.writeLong(requestId);
+        out.writeByte(status);
+        out.write(payload);
+    }
+
+    /**
+     * @throws java.io.EOFException when the stream ends before a whole frame
+     * @throws IOException          when the frame length or its payload is invalid
+     */
+    public static ChannelResponse readFrom(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < HEADER_LENGTH + 1 || length > MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        ChannelResponse response = new ChannelResponse();
+        response.requestId = in.readLong();
+        response.status = in.readByte();
+        byte[] payload = new byte[length - HEADER_LENGTH];
+        in.readFully(payload);
+        // the payload is decoded from the frame alone, so no count read from it can overrun the frame
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        try {
+            if (response.status == OK) {
+                response.results = ResultCodec.readResults(buffer);
+            } else {
+                response.message = ResultCodec.readError(buffer).getMessage();
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid payload of response " + response.requestId + ": " + e.getMessage(), e);
+        }
+        if (buffer.hasRemaining()) {
+            throw new IOException(buffer.remaining() + " bytes left over in response " + response.requestId);
+        }
+        return response;
+    }
+}
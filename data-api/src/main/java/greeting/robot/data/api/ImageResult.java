@@ -0,0 +1,70 @@
+package greeting.robot.data.api;
+
+import java.util.List;
+
+/**
+ * Outcome for one image of a multi-image request: the same {@link Result}s or {@link ErrorResult}
+ * a single upload returns, tagged with the position and name of the image in the request.
+ */
+public class ImageResult {
+    private int index;
+    private String fileName;
+    private List<Result> results;
+    private ErrorResult error;
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    /**
+     * Best matches, best first, or null if the image failed.
+     */
+    public List<Result> getResults() {
+        return results;
+    }
+
+    public void setResults(List<Result> results) {
+        this.results = results;
+    }
+
+    /**
+     * Why the image failed, or null if it was identified.
+     */
+    public ErrorResult getError() {
+        return error;
+    }
+
+    public void setError(ErrorResult error) {
+        this.error = error;
+    }
+
+    public static ImageResult of(int index, String fileName, List<Result> results) {
+        ImageResult imageResult = new ImageResult();
+        imageResult.index = index;
+        imageResult.fileName = fileName;
+        imageResult.results = results;
+        return imageResult;
+    }
+
+    public static ImageResult failed(int index, String fileName, String message) {
+        ErrorResult error = new ErrorResult();
+        error.setMessage(message);
+        ImageResult imageResult = new ImageResult();
+        imageResult.index = index;
+        imageResult.fileName = fileName;
+        imageResult.error = error;
+        return imageResult;
+    }
+}
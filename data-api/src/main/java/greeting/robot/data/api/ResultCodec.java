@@ -0,0 +1,175 @@
+package greeting.robot.data.api;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary form of an identification answer, {@link #MEDIA_TYPE}, sent instead of JSON to
+ * clients that ask for it in their Accept header.
+ * <p>
+ * A body is a tag byte, then for {@link #RESULTS} the number of results (unsigned short) and each
+ * {@link Result} as its name and quality (float), for {@link #ERROR} the {@link ErrorResult}
+ * message. Strings are an unsigned short byte length followed by UTF-8; all numbers are big-endian.
+ */
+public final class ResultCodec {
+    public static final String MEDIA_TYPE = "application/x-greeting-results";
+    public static final byte RESULTS = 0;
+    public static final byte ERROR = 1;
+
+    private static final int MAX_STRING_LENGTH = 0xffff;
+
+    private ResultCodec() {
+    }
+
+    public static byte[] encode(List<Result> results) {
+        if (results.size() > 0xffff) {
+            throw new IllegalArgumentException("Too many results: " + results.size());
+        }
+        int length = 1 + 2;
+        for (Result result : results) {
+            length += stringLength(result.getName()) + 4;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.put(RESULTS).putShort((short) results.size());
+        for (Result result : results) {
+            putString(buffer, result.getName());
+            buffer.putFloat(result.getQuality());
+        }
+        return buffer.array();
+    }
+
+    public static byte[] encode(ErrorResult errorResult) {
+        String message = errorResult.getMessage() != null ? errorResult.getMessage() : "";
+        ByteBuffer buffer = ByteBuffer.allocate(1 + stringLength(message));
+        buffer.put(ERROR);
+        putString(buffer, message);
+        return buffer.array();
+    }
+
+    /**
+     * Whether the body at the position of {@code buffer} is an {@link ErrorResult}; the position is
+     * left unchanged.
+     */
+    public static boolean isError(ByteBuffer buffer) {
+        return buffer.get(buffer.position()) == ERROR;
+    }
+
+    /**
+     * @throws IllegalArgumentException when the body is not a result list or is truncated
+     */
+    public static List<Result> readResults(ByteBuffer buffer) {
+        try {
+            expectTag(buffer, RESULTS);
+            int count = buffer.getShort() & 0xffff;
+            List<Result> results = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String name = getString(buffer);
+                results.add(Result.of(name, buffer.getFloat()));
+            }
+            return results;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated result list", e);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException when the body is not an error or is truncated
+     */
+    public static ErrorResult readError(ByteBuffer buffer) {
+        try {
+            expectTag(buffer, ERROR);
+            ErrorResult errorResult = new ErrorResult();
+            errorResult.setMessage(getString(buffer));
+            return errorResult;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated error", e);
+        }
+    }
+
+    private static void expectTag(ByteBuffer buffer, byte tag) {
+        byte actual = buffer.get();
+        if (actual != tag) {
+            throw new IllegalArgumentException("Expected tag " + tag + " but got " + actual);
+        }
+    }
+
+    /**
+     * Length prefix plus UTF-8 bytes of {@code value}, counted without encoding it.
+     */
+    private static int stringLength(String value) {
+        int bytes = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                bytes++;
+            } else {
+                bytes += 3;
+            }
+        }
+        if (bytes > MAX_STRING_LENGTH) {
+            throw new IllegalArgumentException("String of " + bytes + " UTF-8 bytes is too long");
+        }
+        return 2 + bytes;
+    }
+
+    /**
+     * Encodes {@code value} straight into {@code buffer}, which {@link #stringLength} has sized.
+     * Unpaired surrogates become '?', as {@link String#getBytes} would make them.
+     */
+    private static void putString(ByteBuffer buffer, String value) {
+        int lengthPosition = buffer.position();
+        buffer.position(lengthPosition + 2);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xc0 | c >> 6)).put((byte) (0x80 | c & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    buffer.put((byte) (0xf0 | codePoint >> 18))
+                            .put((byte) (0x80 | codePoint >> 12 & 0x3f))
+                            .put((byte) (0x80 | codePoint >> 6 & 0x3f))
+                            .put((byte) (0x80 | codePoint & 0x3f));
+                } else {
+                    buffer.put((byte) '?');
+                }
+            } else {
+                buffer.put((byte) (0xe0 | c >> 12))
+                        .put((byte) (0x80 | c >> 6 & 0x3f))
+                        .put((byte) (0x80 | c & 0x3f));
+            }
+        }
+        buffer.putShort(lengthPosition, (short) (buffer.position() - lengthPosition - 2));
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xffff;
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.duplicate().get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,65 @@
+package greeting.robot.data.api;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ChannelResponseTest {
+
+    @Test
+    public void roundTripsResults() throws IOException {
+        List<Result> results = Arrays.asList(Result.of("Kowalski", 0.9f), Result.of("\uD83D\uDE00", 0.5f));
+
+        ChannelResponse decoded = roundTrip(ChannelResponse.ok(7, results));
+
+        assertEquals(7, decoded.getRequestId());
+        assertEquals(ChannelResponse.OK, decoded.getStatus());
+        assertEquals(2, decoded.getResults().size());
+        assertEquals("\uD83D\uDE00", decoded.getResults().get(1).getName());
+        assertEquals(0.5f, decoded.getResults().get(1).getQuality(), 0f);
+    }
+
+    @Test
+    public void roundTripsErrors() throws IOException {
+        ChannelResponse decoded = roundTrip(ChannelResponse.failed(8, ChannelResponse.BUSY, "Busy \u017C"));
+
+        assertEquals(8, decoded.getRequestId());
+        assertEquals(ChannelResponse.BUSY, decoded.getStatus());
+        assertEquals("Busy \u017C", decoded.getMessage());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsAResultCountBeyondTheFrame() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(8 + 1 + 3);
+        out.writeLong(9);
+        out.writeByte(ChannelResponse.OK);
+        out.writeByte(ResultCodec.RESULTS);
+        out.writeShort(1000);
+        ChannelResponse.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsAnOversizedFrame() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeInt(ChannelResponse.MAX_FRAME_LENGTH + 1);
+        ChannelResponse.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    private static ChannelResponse roundTrip(ChannelResponse response) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        response.writeTo(out);
+        out.flush();
+        return ChannelResponse.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+}
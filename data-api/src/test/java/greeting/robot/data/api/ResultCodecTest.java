@@ -0,0 +1,85 @@
+package greeting.robot.data.api;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ResultCodecTest {
+
+    @Test
+    public void roundTripsResults() {
+        List<Result> results = Arrays.asList(Result.of("Kowalski", 0.9f), Result.of("Wi\u015Bniewski", 0.5f),
+                Result.of("", 0f));
+
+        List<Result> decoded = ResultCodec.readResults(ByteBuffer.wrap(ResultCodec.encode(results)));
+
+        assertEquals(results.size(), decoded.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(results.get(i).getName(), decoded.get(i).getName());
+            assertEquals(results.get(i).getQuality(), decoded.get(i).getQuality(), 0f);
+        }
+    }
+
+    @Test
+    public void encodesNamesLikeStringGetBytes() {
+        String[] names = {"Kowalski", "Wi\u015Bniewski", "\u017B\u00F3\u0142\u0107", "\u65E5\u672C\u8A9E",
+                "\uD83D\uDE00 smile", "lone \uD800 high", "lone \uDC00 low", "trailing \uD83D", "\uDE00\uD83D swapped"};
+        for (String name : names) {
+            byte[] expected = name.getBytes(StandardCharsets.UTF_8);
+            byte[] encoded = ResultCodec.encode(Collections.singletonList(Result.of(name, 1f)));
+
+            ByteBuffer buffer = ByteBuffer.wrap(encoded);
+            assertEquals(ResultCodec.RESULTS, buffer.get());
+            assertEquals(1, buffer.getShort());
+            assertEquals(name, expected.length, buffer.getShort() & 0xffff);
+            byte[] actual = new byte[expected.length];
+            buffer.get(actual);
+            assertArrayEquals(name, expected, actual);
+            assertEquals(4, buffer.remaining());
+
+            String decoded = ResultCodec.readResults(ByteBuffer.wrap(encoded)).get(0).getName();
+            assertEquals(new String(expected, StandardCharsets.UTF_8), decoded);
+        }
+    }
+
+    @Test
+    public void roundTripsErrors() {
+        ErrorResult errorResult = new ErrorResult();
+        errorResult.setMessage("Brak twarzy: Wi\u015Bniewski \uD83D\uDE00");
+        ByteBuffer buffer = ByteBuffer.wrap(ResultCodec.encode(errorResult));
+
+        assertTrue(ResultCodec.isError(buffer));
+        assertEquals(errorResult.getMessage(), ResultCodec.readError(buffer).getMessage());
+    }
+
+    @Test
+    public void acceptsNamesOfExactlyTheLimit() {
+        char[] name = new char[0xffff];
+        Arrays.fill(name, 'a');
+        String longest = new String(name);
+
+        List<Result> decoded = ResultCodec.readResults(ByteBuffer.wrap(
+                ResultCodec.encode(Collections.singletonList(Result.of(longest, 1f)))));
+
+        assertEquals(longest, decoded.get(0).getName());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNamesBeyondTheLimit() {
+        char[] name = new char[0x8000];
+        Arrays.fill(name, '\u015B');
+        ResultCodec.encode(Collections.singletonList(Result.of(new String(name), 1f)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTruncatedResults() {
+        byte[] encoded = ResultCodec.encode(Collections.singletonList(Result.of("Wi\u015Bniewski", 1f)));
+        ResultCodec.readResults(ByteBuffer.wrap(encoded, 0, encoded.length - 1));
+    }
+}
@@ -19,7 +19,7 @@ public class CameraController implements Runnable {
     private static final Size MAX_SIZE = new Size(WIDTH, HEIGHT);
     private static final Size MIN_SIZE = new Size(100, 100);
 
-    private final RestClient restClient = new RestClient();
+    private final ChannelClient channelClient = new ChannelClient();
     private CascadeClassifier cascadeClassifier;
 
     private Mat colorImg;
@@ -31,7 +31,7 @@ public class CameraController implements Runnable {
         init();
 
         while (true) {
-            singleScan().map(restClient::sendRequest)
+            singleScan().map(crop -> channelClient.sendRequest(crop.image, crop.face))
                     .ifPresent(results -> {
                         System.out.println("\n\n\n\n\n\n");
                         results.forEach(this::say);
@@ -71,7 +71,7 @@ public class CameraController implements Runnable {
         System.out.println(result);
     }
 
-    private Optional<Mat> singleScan() {
+    private Optional<FaceCrop> singleScan() {
         long t_start = System.currentTimeMillis();
         camera.read(colorImg);
         MatOfRect faces = new MatOfRect();
@@ -85,6 +85,7 @@ public class CameraController implements Runnable {
                 bestScore = score;
             }
         }
+        Rect padded = null;
         if (best != null) {
             // Add padding
             final double pad = 0.2;
@@ -101,11 +102,15 @@ public class CameraController implements Runnable {
             tl.y = Math.max(0, tl.y - padY);
             br.x = Math.min(colorImg.width(), br.x + padX);
             br.y = Math.min(colorImg.height(), br.y + padY);
-            best = new Rect(tl, br);
+            padded = new Rect(tl, br);
         }
         long t_end = System.currentTimeMillis();
 //        System.out.println("singleScan: " + (t_end - t_start) + "ms");
-        return Optional.ofNullable(best).map(colorImg::submat);
+        if (padded == null) {
+            return Optional.empty();
+        }
+        Rect face = new Rect(best.x - padded.x, best.y - padded.y, best.width, best.height);
+        return Optional.of(new FaceCrop(colorImg.submat(padded), face));
     }
 
     private static double getScore(Rect r) {
@@ -117,4 +122,17 @@ public class CameraController implements Runnable {
 
         return r.area() / Math.sqrt(d_hor * d_hor + d_ver * d_ver);
     }
+
+    /**
+     * Padded crop around a detected face, with the face rectangle in crop coordinates.
+     */
+    private static class FaceCrop {
+        private final Mat image;
+        private final Rect face;
+
+        FaceCrop(Mat image, Rect face) {
+            this.image = image;
+            this.face = face;
+        }
+    }
 }
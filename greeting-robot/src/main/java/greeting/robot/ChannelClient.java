@@ -0,0 +1,165 @@
+package greeting.robot;
+
+import greeting.robot.data.api.ChannelRequest;
+import greeting.robot.data.api.ChannelResponse;
+import greeting.robot.data.api.Result;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent connection to the recognition server's binary channel. Requests are written as soon as
+ * they are submitted and matched with their responses by request id, so several can be in flight.
+ * The connection is reopened on the next request after it broke.
+ * <p>
+ * The server is {@code -Dgreeting.server.host} and {@code -Dgreeting.channel.port}, by default
+ * {@value #DEFAULT_HOST}:{@value #DEFAULT_PORT}; it must listen on an interface the robot reaches,
+ * see its {@code channel.address}.
+ */
+public class ChannelClient {
+    public static final String HOST_PROPERTY = "greeting.server.host";
+    public static final String PORT_PROPERTY = "greeting.channel.port";
+    private static final String DEFAULT_HOST = "192.168.2.103";
+    private static final int DEFAULT_PORT = 9998;
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private final String host;
+    private final int port;
+    private final AtomicLong requestIds = new AtomicLong();
+    private final Map<Long, CompletableFuture<ChannelResponse>> pending = new ConcurrentHashMap<>();
+    private Socket socket;
+    private DataOutputStream out;
+
+    public ChannelClient() {
+        this(System.getProperty(HOST_PROPERTY, DEFAULT_HOST), Integer.getInteger(PORT_PROPERTY, DEFAULT_PORT));
+    }
+
+    public ChannelClient(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Blocking identification of the pixels of {@code face}, telling the server the face lies within
+     * {@code faceRect} when it is not null. Returns no results when the request failed or was not
+     * answered in time.
+     */
+    public List<Result> sendRequest(Mat face, Rect faceRect) {
+        long start = System.currentTimeMillis();
+        byte[] pixels = new byte[(int) face.total() * face.channels()];
+        face.get(0, 0, pixels);
+        ChannelRequest request = ChannelRequest.raw(requestIds.incrementAndGet(), pixels,
+                face.width(), face.height(), face.channels());
+        if (faceRect != null) {
+            request.setFace(faceRect.x, faceRect.y, faceRect.width, faceRect.height);
+        }
+        try {
+            ChannelResponse response = submit(request).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            if (response.getStatus() == ChannelResponse.OK) {
+                return response.getResults();
+            }
+            System.out.println("Request " + response.getRequestId() + " failed: " + response.getMessage());
+        } catch (TimeoutException e) {
+            pending.remove(request.getRequestId());
+            System.out.println("Request " + request.getRequestId() + " not answered within " + TIMEOUT_MILLIS + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            System.out.println("sendRequest over channel: " + (System.currentTimeMillis() - start));
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Sends the request and returns right away; the future completes when its response arrives,
+     * or exceptionally when the connection breaks first.
+     */
+    public CompletableFuture<ChannelResponse> submit(ChannelRequest request) {
+        CompletableFuture<ChannelResponse> response = new CompletableFuture<>();
+        pending.put(request.getRequestId(), response);
+        try {
+            synchronized (this) {
+                connect();
+                request.writeTo(out);
+                out.flush();
+            }
+        } catch (IOException e) {
+            pending.remove(request.getRequestId());
+            disconnect(e);
+            response.completeExceptionally(e);
+        }
+        return response;
+    }
+
+    public long nextRequestId() {
+        return requestIds.incrementAndGet();
+    }
+
+    public synchronized void close() throws IOException {
+        if (socket != null) {
+            socket.close();
+        }
+    }
+
+    private void connect() throws IOException {
+        if (socket != null && !socket.isClosed()) {
+            return;
+        }
+        Socket connected = new Socket(host, port);
+        connected.setTcpNoDelay(true);
+        socket = connected;
+        out = new DataOutputStream(new BufferedOutputStream(connected.getOutputStream()));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(connected.getInputStream()));
+        Thread reader = new Thread(() -> read(connected, in), "channel-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void read(Socket connected, DataInputStream in) {
+        try {
+            while (true) {
+                ChannelResponse response = ChannelResponse.readFrom(in);
+                CompletableFuture<ChannelResponse> future = pending.remove(response.getRequestId());
+                if (future != null) {
+                    future.complete(response);
+                }
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                if (socket == connected) {
+                    disconnect(e);
+                }
+            }
+        }
+    }
+
+    private synchronized void disconnect(IOException cause) {
+        try {
+            if (socket != null) {
+                socket.close();
+            }
+        } catch (IOException ignored) {
+            // closing anyway
+        }
+        socket = null;
+        pending.values().forEach(future -> future.completeExceptionally(cause));
+        pending.clear();
+    }
+}
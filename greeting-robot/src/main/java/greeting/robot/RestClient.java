@@ -1,30 +1,36 @@
 package greeting.robot;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import greeting.robot.data.api.ErrorResult;
 import greeting.robot.data.api.Result;
-import org.apache.commons.io.IOUtils;
+import greeting.robot.data.api.ResultCodec;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
 import org.opencv.core.Mat;
+import org.opencv.core.Rect;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferByte;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.List;
 
 public class RestClient {
-    private static final String ENDPOINT_URL = "http://192.168.2.103:9999/uploadFile";
+    private static final String SERVER_URL = "http://"
+            + System.getProperty(ChannelClient.HOST_PROPERTY, "192.168.2.103") + ":9999";
+    private static final String ENDPOINT_URL = SERVER_URL + "/uploadFile";
+    private static final String RAW_ENDPOINT_URL = SERVER_URL + "/uploadRaw";
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
     private final CloseableHttpClient httpClient = HttpClients.createDefault();
 
     private static BufferedImage convertToBufferedImage(Mat mat) {
@@ -35,6 +41,43 @@ public class RestClient {
         return image;
     }
 
+    /**
+     * Sends the pixels of {@code face} as they are, saving the JPEG encode here and the decode on the server.
+     */
+    public List<Result> sendRawRequest(Mat face) {
+        return sendRawRequest(face, null);
+    }
+
+    /**
+     * Like {@link #sendRawRequest(Mat)}, telling the server the face lies within {@code faceRect} of the
+     * image, so it does not search the whole image again.
+     */
+    public List<Result> sendRawRequest(Mat face, Rect faceRect) {
+        long start = System.currentTimeMillis();
+        byte[] pixels = new byte[(int) face.total() * face.channels()];
+        face.get(0, 0, pixels);
+
+        String url = RAW_ENDPOINT_URL;
+        if (faceRect != null) {
+            url += "?faceX=" + faceRect.x + "&faceY=" + faceRect.y
+                    + "&faceWidth=" + faceRect.width + "&faceHeight=" + faceRect.height;
+        }
+        HttpPost uploadRaw = new HttpPost(url);
+        uploadRaw.setHeader("X-Image-Width", String.valueOf(face.width()));
+        uploadRaw.setHeader("X-Image-Height", String.valueOf(face.height()));
+        uploadRaw.setHeader("X-Image-Channels", String.valueOf(face.channels()));
+        uploadRaw.setHeader(HttpHeaders.ACCEPT, ResultCodec.MEDIA_TYPE);
+        uploadRaw.setEntity(new ByteArrayEntity(pixels, ContentType.APPLICATION_OCTET_STREAM));
+        try (CloseableHttpResponse response = httpClient.execute(uploadRaw)) {
+            return readResults(response);
+        } catch (IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+        } finally {
+            System.out.println("sendRawRequest: " + (System.currentTimeMillis() - start));
+        }
+        return Collections.emptyList();
+    }
+
     public List<Result> sendRequest(Mat face) {
         System.out.println("sendRequest");
         long start = System.currentTimeMillis();
@@ -55,19 +98,37 @@ public class RestClient {
                 .addBinaryBody("file", imageBytes,
                         ContentType.APPLICATION_OCTET_STREAM, "face.jpg").build();
 
+        uploadFile.setHeader(HttpHeaders.ACCEPT, ResultCodec.MEDIA_TYPE);
         uploadFile.setEntity(multipart);
-        String responseText;
-        try {
-            CloseableHttpResponse response = httpClient.execute(uploadFile);
-            HttpEntity responseEntity = response.getEntity();
-            responseText = IOUtils.toString(responseEntity.getContent());
-            System.out.println(response.getStatusLine().getStatusCode() + responseText);
-            return Arrays.asList(objectMapper.readValue(responseText, Result[].class));
-        } catch (IOException e) {
+        try (CloseableHttpResponse response = httpClient.execute(uploadFile)) {
+            return readResults(response);
+        } catch (IOException | IllegalArgumentException e) {
             e.printStackTrace();
         }
         long end = System.currentTimeMillis();
         System.out.println("sendRequest: " + (end - start));
         return Collections.emptyList();
     }
+
+    /**
+     * Decodes the binary answer asked for with the Accept header; errors, and anything else the server
+     * may answer with, are printed and give no results.
+     */
+    private static List<Result> readResults(CloseableHttpResponse response) throws IOException {
+        int status = response.getStatusLine().getStatusCode();
+        ContentType contentType = ContentType.get(response.getEntity());
+        if (contentType == null || !ResultCodec.MEDIA_TYPE.equals(contentType.getMimeType())) {
+            System.out.println(status + " " + EntityUtils.toString(response.getEntity()));
+            return Collections.emptyList();
+        }
+        ByteBuffer body = ByteBuffer.wrap(EntityUtils.toByteArray(response.getEntity()));
+        if (body.hasRemaining() && ResultCodec.isError(body)) {
+            ErrorResult errorResult = ResultCodec.readError(body);
+            System.out.println(status + " " + errorResult.getMessage());
+            return Collections.emptyList();
+        }
+        List<Result> results = ResultCodec.readResults(body);
+        System.out.println(status + " " + results);
+        return results;
+    }
 }
@@ -0,0 +1,12 @@
+package greeting.robot.server;
+
+/**
+ * Thrown when no analyser could be borrowed in time, the request should be retried later.
+ */
+public class AnalyserBusyException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public AnalyserBusyException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,120 @@
+package greeting.robot.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Fixed set of initialised analyser instances lent to one caller at a time. With thread affinity
+ * every instance lives on its own worker thread and all calls to it, including initialisation
+ * and release, run there.
+ */
+public class AnalyserPool<A> {
+    private final BlockingQueue<Slot<A>> idle;
+    private final List<Slot<A>> slots = new ArrayList<>();
+    private final long borrowTimeoutMillis;
+
+    public AnalyserPool(int size, boolean threadAffinity, long borrowTimeoutMillis,
+                        Supplier<A> factory, Consumer<A> initializer) {
+        this.idle = new ArrayBlockingQueue<>(size);
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        for (int i = 0; i < size; i++) {
+            String threadName = "analyser-" + i;
+            ExecutorService executor = threadAffinity
+                    ? Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, threadName))
+                    : null;
+            Slot<A> slot = new Slot<>(executor);
+            slot.analyser = slot.run(analyser -> {
+                A created = factory.get();
+                initializer.accept(created);
+                return created;
+            });
+            slots.add(slot);
+            idle.add(slot);
+        }
+    }
+
+    /**
+     * Runs {@code call} on a free instance, waiting at most the borrow timeout for one, or as long
+     * as it takes when the timeout is not positive.
+     *
+     * @throws AnalyserBusyException when every instance stayed busy for the whole timeout
+     */
+    public <T> T execute(Function<A, T> call) {
+        Slot<A> slot;
+        try {
+            slot = borrowTimeoutMillis > 0
+                    ? idle.poll(borrowTimeoutMillis, TimeUnit.MILLISECONDS)
+                    : idle.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AnalyserBusyException("Interrupted while waiting for an analyser");
+        }
+        if (slot == null) {
+            throw new AnalyserBusyException("All " + slots.size() + " analysers busy for "
+                    + borrowTimeoutMillis + " ms");
+        }
+        try {
+            return slot.run(call);
+        } finally {
+            idle.add(slot);
+        }
+    }
+
+    public int size() {
+        return slots.size();
+    }
+
+    public int available() {
+        return idle.size();
+    }
+
+    /**
+     * Releases every instance, callers must not use the pool afterwards.
+     */
+    public void close(Consumer<A> finalizer) {
+        for (Slot<A> slot : slots) {
+            slot.run(analyser -> {
+                finalizer.accept(analyser);
+                return null;
+            });
+            if (slot.executor != null) {
+                slot.executor.shutdown();
+            }
+        }
+    }
+
+    private static class Slot<A> {
+        private final ExecutorService executor;
+        private A analyser;
+
+        Slot(ExecutorService executor) {
+            this.executor = executor;
+        }
+
+        <T> T run(Function<A, T> call) {
+            if (executor == null) {
+                return call.apply(analyser);
+            }
+            try {
+                return executor.submit(() -> call.apply(analyser)).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the analyser", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+}
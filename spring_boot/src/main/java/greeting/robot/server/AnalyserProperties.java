@@ -0,0 +1,196 @@
+package greeting.robot.server;
+
+import greeting.robot.server.engine.FaceAnalysisEngine;
+import greeting.robot.server.engine.PwFaceAnalysisEngine;
+import greeting.robot.server.engine.StubFaceAnalysisEngine;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.function.IntSupplier;
+
+/**
+ * Face analysis settings bound from the {@code analyser.*} keys of application.properties.
+ */
+@Component
+@ConfigurationProperties(prefix = "analyser")
+public class AnalyserProperties {
+
+    public enum Engine {
+        PW, STUB
+    }
+
+    private Engine engine = Engine.PW;
+    private boolean useGpu = true;
+    /**
+     * Number of initialised native analysers.
+     */
+    private int poolSize = 1;
+    /**
+     * Whether every analyser is only ever called from its own worker thread.
+     */
+    private boolean threadAffinity = false;
+    /**
+     * How long a request waits for a free analyser before it is rejected with a 503, without limit
+     * when not positive.
+     */
+    private long borrowTimeoutMs = 5000;
+    private final Batch batch = new Batch();
+    private final Stub stub = new Stub();
+
+    public Engine getEngine() {
+        return engine;
+    }
+
+    public void setEngine(Engine engine) {
+        this.engine = engine;
+    }
+
+    public boolean isUseGpu() {
+        return useGpu;
+    }
+
+    public void setUseGpu(boolean useGpu) {
+        this.useGpu = useGpu;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    public boolean isThreadAffinity() {
+        return threadAffinity;
+    }
+
+    public void setThreadAffinity(boolean threadAffinity) {
+        this.threadAffinity = threadAffinity;
+    }
+
+    public long getBorrowTimeoutMs() {
+        return borrowTimeoutMs;
+    }
+
+    public void setBorrowTimeoutMs(long borrowTimeoutMs) {
+        this.borrowTimeoutMs = borrowTimeoutMs;
+    }
+
+    public Batch getBatch() {
+        return batch;
+    }
+
+    public Stub getStub() {
+        return stub;
+    }
+
+    /**
+     * @param galleryDimension descriptor length of the loaded gallery, used by the stub engine
+     *                         unless {@code analyser.stub.dimension} is set
+     */
+    public FaceAnalysisEngine createEngine(IntSupplier galleryDimension) {
+        switch (engine) {
+            case STUB:
+                IntSupplier dimension = stub.getDimension() > 0 ? stub::getDimension : galleryDimension;
+                return new StubFaceAnalysisEngine(dimension, stub.getDetectCostUs(), stub.getDescribeCostUs());
+            default:
+                return new PwFaceAnalysisEngine(useGpu);
+        }
+    }
+
+    public static class Batch {
+        private boolean enabled = false;
+        /**
+         * How long the first request of a batch waits for others to join it.
+         */
+        private long windowMs = 5;
+        private int maxSize = 8;
+        /**
+         * Requests waiting for a batch beyond which new ones are rejected.
+         */
+        private int queueCapacity = 64;
+        /**
+         * How long a request waits for the result of its batch before it is rejected.
+         */
+        private long timeoutMs = 10000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getWindowMs() {
+            return windowMs;
+        }
+
+        public void setWindowMs(long windowMs) {
+            this.windowMs = windowMs;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public long getTimeoutMs() {
+            return timeoutMs;
+        }
+
+        public void setTimeoutMs(long timeoutMs) {
+            this.timeoutMs = timeoutMs;
+        }
+    }
+
+    /**
+     * Settings of the pure-Java engine used for benchmarks without the native library.
+     */
+    public static class Stub {
+        public static final int DEFAULT_DIMENSION = 128;
+
+        /**
+         * Descriptor length, that of the default gallery when not positive.
+         */
+        private int dimension = 0;
+        private long detectCostUs = 0;
+        private long describeCostUs = 0;
+
+        public int getDimension() {
+            return dimension;
+        }
+
+        public void setDimension(int dimension) {
+            this.dimension = dimension;
+        }
+
+        public long getDetectCostUs() {
+            return detectCostUs;
+        }
+
+        public void setDetectCostUs(long detectCostUs) {
+            this.detectCostUs = detectCostUs;
+        }
+
+        public long getDescribeCostUs() {
+            return describeCostUs;
+        }
+
+        public void setDescribeCostUs(long describeCostUs) {
+            this.describeCostUs = describeCostUs;
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package greeting.robot.server;
 
+import greeting.robot.server.engine.FaceAnalysisEngine;
+import greeting.robot.server.metrics.LatencyHistogram;
+import greeting.robot.server.metrics.MetricsRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import pl.edu.agh.biowiz.face.lib.pw.PwFaceAnalysisLib;
 import pl.edu.agh.biowiz.model.detected.ImageRectangle;
 import pl.edu.agh.biowiz.model.detected.PwDetectedFace;
 import pl.edu.agh.biowiz.model.profile.CreateDescriptorResult;
@@ -10,37 +13,121 @@ import pl.edu.agh.biowiz.model.profile.PwFaceDescriptor;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 @Service
 public class AnalyserService {
-    private final PwFaceAnalysisLib analyser = new PwFaceAnalysisLib();
+
+    @Autowired
+    private AnalyserProperties analyserProperties;
+
+    @Autowired
+    private MetricsRegistry metricsRegistry;
+
+    private AnalyserPool<FaceAnalysisEngine> analysers;
+    private LatencyHistogram detectLatency;
+    private LatencyHistogram describeLatency;
+    private volatile int galleryDimension;
 
     @PostConstruct
     public void postConstruct() {
-        System.setProperty("useGpu", "true");
-        analyser.initialize();
+        detectLatency = metricsRegistry.histogram("recognition_detect_seconds");
+        describeLatency = metricsRegistry.histogram("recognition_describe_seconds");
+        analysers = new AnalyserPool<>(analyserProperties.getPoolSize(), analyserProperties.isThreadAffinity(),
+                analyserProperties.getBorrowTimeoutMs(), () -> analyserProperties.createEngine(this::galleryDimension),
+                FaceAnalysisEngine::initialize);
     }
 
     @PreDestroy
     public void preDestroy() {
-        analyser.free();
+        analysers.close(FaceAnalysisEngine::free);
+    }
+
+    /**
+     * Tells the engine the descriptor length of the default gallery once it is loaded; only the stub
+     * engine, which has no length of its own, uses it.
+     */
+    public void setGalleryDimension(int galleryDimension) {
+        this.galleryDimension = galleryDimension;
+    }
+
+    private int galleryDimension() {
+        int dimension = galleryDimension;
+        return dimension > 0 ? dimension : AnalyserProperties.Stub.DEFAULT_DIMENSION;
     }
 
     public Optional<PwDetectedFace> detect(BufferedImage image) {
-        ImageRectangle rectangle = new ImageRectangle(0, 0, image.getWidth(), image.getHeight());
-        return analyser.detectFaceInRectangle(image, rectangle);
+        return detect(image, new ImageRectangle(0, 0, image.getWidth(), image.getHeight()));
+    }
+
+    /**
+     * Looks for a face only within {@code rectangle}, e.g. where the client already found one.
+     */
+    public Optional<PwDetectedFace> detect(BufferedImage image, ImageRectangle rectangle) {
+        return analysers.execute(analyser -> detect(analyser, image, rectangle));
     }
 
     public CreateDescriptorResult<PwFaceDescriptor> describe(PwDetectedFace detectedFace, BufferedImage image) {
-        return analyser.createDescriptor(detectedFace, image);
+        return analysers.execute(analyser -> describe(analyser, detectedFace, image));
+    }
+
+    /**
+     * Describes an image that is a face crop as a whole, without any detection pass.
+     */
+    public Optional<PwFaceDescriptor> describeCrop(BufferedImage image) {
+        PwDetectedFace face = new PwDetectedFace(0, 0, image.getWidth(), image.getHeight());
+        return describe(face, image).getDescriptor();
     }
 
     public Optional<PwFaceDescriptor> getDescriptorFor(BufferedImage image) {
         return detect(image).flatMap(face -> describe(face, image).getDescriptor());
     }
 
+    /**
+     * Detects and describes the faces of a whole batch while holding a single analyser.
+     */
+    public List<Optional<PwFaceDescriptor>> getDescriptorsFor(List<BufferedImage> images) {
+        return analysers.execute(analyser -> {
+            List<Optional<PwFaceDescriptor>> descriptors = new ArrayList<>(images.size());
+            for (BufferedImage image : images) {
+                ImageRectangle rectangle = new ImageRectangle(0, 0, image.getWidth(), image.getHeight());
+                descriptors.add(detect(analyser, image, rectangle)
+                        .flatMap(face -> describe(analyser, face, image).getDescriptor()));
+            }
+            return descriptors;
+        });
+    }
+
+    /**
+     * Detection on a borrowed analyser, timed without the wait for it.
+     */
+    private Optional<PwDetectedFace> detect(FaceAnalysisEngine analyser, BufferedImage image,
+                                            ImageRectangle rectangle) {
+        long start = System.nanoTime();
+        try {
+            return analyser.detectFaceInRectangle(image, rectangle);
+        } finally {
+            detectLatency.recordSince(start);
+        }
+    }
+
+    private CreateDescriptorResult<PwFaceDescriptor> describe(FaceAnalysisEngine analyser,
+                                                              PwDetectedFace detectedFace, BufferedImage image) {
+        long start = System.nanoTime();
+        try {
+            return analyser.createDescriptor(detectedFace, image);
+        } finally {
+            describeLatency.recordSince(start);
+        }
+    }
+
+    public int getPoolSize() {
+        return analysers.size();
+    }
+
     public float compareDescriptors(PwFaceDescriptor first, PwFaceDescriptor second) {
-        return analyser.compareDescriptors(first, second);
+        return analysers.execute(analyser -> analyser.compareDescriptors(first, second));
     }
 }
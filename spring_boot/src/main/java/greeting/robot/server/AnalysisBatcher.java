@@ -0,0 +1,201 @@
+package greeting.robot.server;
+
+import greeting.robot.server.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import pl.edu.agh.biowiz.model.profile.PwFaceDescriptor;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects concurrent detect-and-describe requests for at most {@code analyser.batch.window-ms}
+ * or until {@code analyser.batch.max-size} of them are waiting, then runs the whole batch on one
+ * analyser and completes every caller's future separately.
+ * <p>
+ * At most {@code analyser.batch.queue-capacity} requests wait to be batched and each waits at most
+ * {@code analyser.batch.timeout-ms} for its result, beyond either it fails with
+ * {@link AnalyserBusyException} like a request finding no free analyser.
+ * <p>
+ * The collector only starts a batch once an analyser is free for it, so while all of them are
+ * busy requests keep waiting in the bounded queue instead of piling up in the dispatcher.
+ */
+@Service
+public class AnalysisBatcher {
+    private final Logger logger = LoggerFactory.getLogger(AnalysisBatcher.class);
+
+    @Autowired
+    private AnalyserService analyserService;
+
+    @Autowired
+    private AnalyserProperties analyserProperties;
+
+    @Autowired
+    private MetricsRegistry metricsRegistry;
+
+    private BlockingQueue<Job> queue;
+    private final AtomicInteger lastBatchSize = new AtomicInteger();
+    private LongAdder batches;
+    private LongAdder batchedImages;
+    private Thread collector;
+    private ExecutorService dispatcher;
+    private Semaphore freeAnalysers;
+
+    @PostConstruct
+    public void postConstruct() {
+        AnalyserProperties.Batch batch = analyserProperties.getBatch();
+        queue = new ArrayBlockingQueue<>(batch.getQueueCapacity());
+        metricsRegistry.gauge("analyser_batch_enabled", () -> batch.isEnabled() ? 1 : 0);
+        metricsRegistry.gauge("analyser_batch_window_ms", batch::getWindowMs);
+        metricsRegistry.gauge("analyser_batch_max_size", batch::getMaxSize);
+        metricsRegistry.gauge("analyser_batch_last_size", lastBatchSize::get);
+        metricsRegistry.gauge("analyser_batch_queue_depth", queue::size);
+        batches = metricsRegistry.counter("analyser_batches_total");
+        batchedImages = metricsRegistry.counter("analyser_batched_images_total");
+        if (!batch.isEnabled()) {
+            return;
+        }
+
+        int poolSize = Math.max(1, analyserService.getPoolSize());
+        freeAnalysers = new Semaphore(poolSize);
+        dispatcher = Executors.newFixedThreadPool(poolSize, runnable -> new Thread(runnable, "analyser-batch"));
+        collector = new Thread(this::collect, "analyser-batch-collector");
+        collector.setDaemon(true);
+        collector.start();
+    }
+
+    @PreDestroy
+    public void preDestroy() {
+        if (collector != null) {
+            collector.interrupt();
+            dispatcher.shutdown();
+        }
+    }
+
+    public boolean isEnabled() {
+        return collector != null;
+    }
+
+    /**
+     * @throws AnalyserBusyException right away when the queue is full
+     */
+    public CompletableFuture<Optional<PwFaceDescriptor>> submit(BufferedImage image) {
+        Job job = new Job(image);
+        if (!queue.offer(job)) {
+            throw new AnalyserBusyException("All " + analyserProperties.getBatch().getQueueCapacity()
+                    + " batch queue slots taken");
+        }
+        return job.result;
+    }
+
+    /**
+     * Blocking variant of {@link #submit(BufferedImage)} rethrowing the failure of the batch.
+     *
+     * @throws AnalyserBusyException when the queue is full or the batch took longer than the timeout
+     */
+    public Optional<PwFaceDescriptor> getDescriptorFor(BufferedImage image) throws InterruptedException {
+        long timeoutMs = analyserProperties.getBatch().getTimeoutMs();
+        CompletableFuture<Optional<PwFaceDescriptor>> result = submit(image);
+        try {
+            return result.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            result.cancel(false);
+            throw new AnalyserBusyException("No batch result within " + timeoutMs + " ms");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private void collect() {
+        AnalyserProperties.Batch settings = analyserProperties.getBatch();
+        while (!Thread.currentThread().isInterrupted()) {
+            List<Job> batch = new ArrayList<>(settings.getMaxSize());
+            try {
+                freeAnalysers.acquire();
+            } catch (InterruptedException e) {
+                queue.forEach(job -> job.result.completeExceptionally(e));
+                return;
+            }
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.getWindowMs());
+                while (batch.size() < settings.getMaxSize()) {
+                    Job next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                freeAnalysers.release();
+                batch.forEach(job -> job.result.completeExceptionally(e));
+                queue.forEach(job -> job.result.completeExceptionally(e));
+                return;
+            }
+            try {
+                dispatcher.execute(() -> {
+                    try {
+                        run(batch);
+                    } finally {
+                        freeAnalysers.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                freeAnalysers.release();
+                batch.forEach(job -> job.result.completeExceptionally(new AnalyserBusyException(e.getMessage())));
+            }
+        }
+    }
+
+    private void run(List<Job> batch) {
+        // callers that gave up waiting are not analysed any more
+        batch.removeIf(job -> job.result.isCancelled());
+        if (batch.isEmpty()) {
+            return;
+        }
+        lastBatchSize.set(batch.size());
+        batches.increment();
+        batchedImages.add(batch.size());
+        List<BufferedImage> images = new ArrayList<>(batch.size());
+        batch.forEach(job -> images.add(job.image));
+        try {
+            List<Optional<PwFaceDescriptor>> descriptors = analyserService.getDescriptorsFor(images);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.complete(descriptors.get(i));
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Batch of {} failed: {}", batch.size(), e.getMessage());
+            batch.forEach(job -> job.result.completeExceptionally(e));
+        }
+    }
+
+    private static class Job {
+        private final BufferedImage image;
+        private final CompletableFuture<Optional<PwFaceDescriptor>> result = new CompletableFuture<>();
+
+        Job(BufferedImage image) {
+            this.image = image;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package greeting.robot.server;
+
+import pl.edu.agh.biowiz.model.detected.ImageRectangle;
+import pl.edu.agh.biowiz.model.detected.PwDetectedFace;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Image analysed in place of an upload, possibly subsampled, together with the factors mapping
+ * its coordinates back to the uploaded one.
+ */
+public final class DecodedImage {
+    private final BufferedImage image;
+    private final int sourceWidth;
+    private final int sourceHeight;
+    private final int subsampling;
+
+    DecodedImage(BufferedImage image, int sourceWidth, int sourceHeight, int subsampling) {
+        this.image = image;
+        this.sourceWidth = sourceWidth;
+        this.sourceHeight = sourceHeight;
+        this.subsampling = subsampling;
+    }
+
+    /**
+     * Image analysed as uploaded.
+     */
+    public static DecodedImage of(BufferedImage image) {
+        return new DecodedImage(image, image.getWidth(), image.getHeight(), 1);
+    }
+
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    public int getSourceWidth() {
+        return sourceWidth;
+    }
+
+    public int getSourceHeight() {
+        return sourceHeight;
+    }
+
+    /**
+     * Number of source pixels per decoded pixel along each axis.
+     */
+    public int getSubsampling() {
+        return subsampling;
+    }
+
+    /**
+     * Maps a rectangle of the uploaded image to {@link #getImage()}, clipped to its bounds.
+     *
+     * @throws IllegalArgumentException if the rectangle lies outside of the image
+     */
+    public ImageRectangle fromSource(ImageRectangle rectangle) {
+        int x = Math.max(0, rectangle.getX() / subsampling);
+        int y = Math.max(0, rectangle.getY() / subsampling);
+        int right = Math.min(image.getWidth(), ceilDiv(rectangle.getX() + rectangle.getWidth(), subsampling));
+        int bottom = Math.min(image.getHeight(), ceilDiv(rectangle.getY() + rectangle.getHeight(), subsampling));
+        if (right <= x || bottom <= y) {
+            throw new IllegalArgumentException("Face rectangle " + rectangle.getX() + "," + rectangle.getY() + " "
+                    + rectangle.getWidth() + "x" + rectangle.getHeight() + " is outside of the "
+                    + sourceWidth + "x" + sourceHeight + " image");
+        }
+        return new ImageRectangle(x, y, right - x, bottom - y);
+    }
+
+    /**
+     * Maps a face detected on {@link #getImage()} to the coordinates of the uploaded image.
+     */
+    public PwDetectedFace toSource(PwDetectedFace face) {
+        if (subsampling == 1) {
+            return face;
+        }
+        int x = face.getX() * subsampling;
+        int y = face.getY() * subsampling;
+        return new PwDetectedFace(x, y,
+                Math.min(face.getWidth() * subsampling, sourceWidth - x),
+                Math.min(face.getHeight() * subsampling, sourceHeight - y));
+    }
+
+    private static int ceilDiv(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+}
@@ -1,61 +1,595 @@
 package greeting.robot.server;
 
 import greeting.robot.data.api.Result;
+import greeting.robot.server.gallery.EnrollmentLog;
+import greeting.robot.server.gallery.Gallery;
+import greeting.robot.server.gallery.GalleryProperties;
+import greeting.robot.server.gallery.GalleryScanner;
+import greeting.robot.server.gallery.GallerySnapshot;
+import greeting.robot.server.gallery.LiveGallery;
+import greeting.robot.server.gallery.Matcher;
+import greeting.robot.server.gallery.ProjectWatcher;
+import greeting.robot.server.gallery.SimilarityMetric;
+import greeting.robot.server.gallery.SubjectTable;
+import greeting.robot.server.metrics.LatencyHistogram;
+import greeting.robot.server.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import pl.edu.agh.biowiz.model.Project;
-import pl.edu.agh.biowiz.model.Subject;
-import pl.edu.agh.biowiz.model.mark.FaceMark;
 import pl.edu.agh.biowiz.model.profile.PwFaceDescriptor;
 import pl.edu.agh.biowiz.repo.holder.ProjectHolder;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
-import java.util.Comparator;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
 
+/**
+ * Matches descriptors against named galleries, one per venue, each made of the project
+ * {@code <gallery.projects-path>/<name>/project.biow} and its own enrollment log.
+ * <p>
+ * Galleries are loaded on first use, on a loader thread of their own, and kept in least recently
+ * used order. Recognition does not wait for a load: a request for a gallery still loading fails with
+ * {@link GalleryLoadingException}, to be retried. After every load and rebuild the least recently
+ * used ones are dropped until the estimated heap of the rest fits {@code gallery.cache.max-bytes};
+ * the gallery just loaded or rebuilt always stays, however large.
+ * Enrollments are logged before they are published, so a dropped gallery comes back with them.
+ * <p>
+ * A loaded gallery whose project file changes is rebuilt on a background thread and swapped in
+ * atomically: searches never wait for a rebuild, they run on the version current when they start.
+ */
 @Service
 public class DescriptorService {
+    private static final String PROJECT_FILE = "project.biow";
+    private static final String[] LEGACY_ENROLLMENT_FILES = {"descriptors.bin", "names.bin"};
+    private static final Pattern GALLERY_NAME = Pattern.compile("[A-Za-z0-9][A-Za-z0-9_-]*");
+    private static final int METRIC_SAMPLES = 16;
+    private static final float METRIC_TOLERANCE = 1e-3f;
+
+    private final Logger logger = LoggerFactory.getLogger(DescriptorService.class);
 
     @Autowired
     private AnalyserService analyserService;
 
+    @Autowired
+    private GalleryProperties galleryProperties;
+
+    @Autowired
+    private GalleryScanner galleryScanner;
+
+    @Autowired
+    private GallerySnapshot gallerySnapshot;
+
     @Autowired
     private ProjectHolder projectHolder;
-    private Project biowizProject;
-    private List<FaceMark> faceMarks;
+
+    @Autowired
+    private MetricsRegistry metricsRegistry;
+
+    /**
+     * Access ordered, so iteration starts at the least recently used gallery.
+     */
+    private final Map<String, CachedGallery> galleries = new LinkedHashMap<>(16, 0.75f, true);
+    private long maxBytes;
+    private LongAdder hits;
+    private LongAdder misses;
+    private LongAdder evictions;
+    private LatencyHistogram loadLatency;
+    private LongAdder rebuilds;
+    private LongAdder rebuildFailures;
+    private LatencyHistogram rebuildLatency;
+    private ExecutorService loader;
+    private ExecutorService rebuilder;
+    private ProjectWatcher projectWatcher;
 
     @PostConstruct
-    public void postConstruct() {
-        biowizProject = projectHolder.openProject(".biowiz-data/exampleCelebrites/project.biow")
-                .orElseThrow(() -> new IllegalStateException("Cannot deserialize project"));
-        faceMarks = projectHolder.getFaceMarks();
+    public void postConstruct() throws IOException {
+        maxBytes = galleryProperties.getCache().getMaxBytes() > 0
+                ? galleryProperties.getCache().getMaxBytes()
+                : Runtime.getRuntime().maxMemory() / 2;
+        hits = metricsRegistry.counter("gallery_cache_hits_total");
+        misses = metricsRegistry.counter("gallery_cache_misses_total");
+        evictions = metricsRegistry.counter("gallery_cache_evictions_total");
+        loadLatency = metricsRegistry.histogram("gallery_load_seconds");
+        metricsRegistry.gauge("gallery_cache_hit_ratio", () -> {
+            long total = hits.sum() + misses.sum();
+            return total == 0 ? 0 : (double) hits.sum() / total;
+        });
+        metricsRegistry.gauge("gallery_cache_galleries", () -> {
+            synchronized (galleries) {
+                return galleries.size();
+            }
+        });
+        metricsRegistry.gauge("gallery_cache_bytes", () -> {
+            synchronized (galleries) {
+                return residentBytes();
+            }
+        });
+        metricsRegistry.gauge("gallery_cache_max_bytes", () -> maxBytes);
+        rebuilds = metricsRegistry.counter("gallery_rebuilds_total");
+        rebuildFailures = metricsRegistry.counter("gallery_rebuild_failures_total");
+        rebuildLatency = metricsRegistry.histogram("gallery_rebuild_seconds");
+
+        loader = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "gallery-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        GalleryProperties.Reload reload = galleryProperties.getReload();
+        if (reload.isEnabled()) {
+            rebuilder = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "gallery-rebuilder");
+                thread.setDaemon(true);
+                return thread;
+            });
+            projectWatcher = new ProjectWatcher(reload.getDebounceMs(),
+                    name -> rebuilder.execute(() -> rebuild(name)));
+        }
+
+        migrateLegacyEnrollments();
+        CachedGallery defaultGallery = gallery(galleryProperties.getDefaultGallery(), true, false);
+        analyserService.setGalleryDimension(defaultGallery.liveGallery.getBase().getGallery().getDimension());
     }
 
     @PreDestroy
-    public void preDestroy() {
-        projectHolder.closeProject();
+    public void preDestroy() throws IOException {
+        loader.shutdownNow();
+        if (projectWatcher != null) {
+            projectWatcher.close();
+            rebuilder.shutdownNow();
+        }
+        List<CachedGallery> loaded;
+        synchronized (galleries) {
+            loaded = new ArrayList<>(galleries.values());
+            galleries.clear();
+        }
+        loaded.forEach(this::close);
+    }
+
+    /**
+     * Checks a gallery can be searched before any work is spent on the image, starting its load
+     * when it is not loaded.
+     *
+     * @param galleryName null for {@code gallery.default-gallery}
+     * @throws IllegalArgumentException when there is no such gallery
+     * @throws GalleryLoadingException  when the gallery is still loading
+     */
+    public void checkReady(String galleryName) {
+        gallery(galleryName, false, true);
+    }
+
+    /**
+     * Checks a gallery exists before any work is spent on an enrollment, starting its load so it runs
+     * while the face is analysed.
+     *
+     * @param galleryName null for {@code gallery.default-gallery}
+     * @throws IllegalArgumentException when there is no such gallery
+     */
+    public void prepare(String galleryName) {
+        cachedGallery(galleryName, true);
+    }
+
+    /**
+     * Returns at most {@code k} best matches scoring at least {@code minQuality}, best first.
+     *
+     * @param galleryName null for {@code gallery.default-gallery}
+     * @throws IllegalArgumentException when {@code k} is not between 1 and {@code gallery.max-k}, or
+     *                                  there is no such gallery
+     * @throws GalleryLoadingException  when the gallery is still loading
+     */
+    public List<Result> identify(String galleryName, PwFaceDescriptor descriptor, int k, float minQuality) {
+        if (k < 1 || k > galleryProperties.getMaxK()) {
+            throw new IllegalArgumentException("k must be between 1 and " + galleryProperties.getMaxK() + ", got " + k);
+        }
+        LiveGallery liveGallery = gallery(galleryName, false, false).liveGallery;
+        // no need to make room for more matches than there are rows
+        int limit = Math.min(k, Math.max(1, liveGallery.size()));
+        return liveGallery.identify(descriptor.getDescriptor(), limit, minQuality, galleryScanner);
+    }
+
+    /**
+     * Logs a new descriptor of {@code name} and makes it searchable right away, as a descriptor
+     * of the project subject of that name if there is one. Waits for the gallery when it is loading.
+     *
+     * @param galleryName null for {@code gallery.default-gallery}
+     * @return id of the subject the descriptor was enrolled to
+     * @throws IllegalArgumentException when the descriptor does not fit the gallery, nothing is logged then
+     */
+    public UUID enroll(String galleryName, String name, PwFaceDescriptor descriptor) throws IOException {
+        while (true) {
+            CachedGallery cached = gallery(galleryName, true, false);
+            synchronized (cached) {
+                // a gallery dropped meanwhile is loaded again by the next round
+                if (!cached.closed) {
+                    cached.liveGallery.checkDimension(descriptor.getDescriptor());
+                    UUID loggedId = cached.enrollmentLog.append(name, descriptor.getDescriptor());
+                    UUID subjectId = cached.liveGallery.getBase().getGallery().getSubjects().idOf(name)
+                            .orElse(loggedId);
+                    cached.liveGallery.enroll(subjectId, name, descriptor.getDescriptor());
+                    return subjectId;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the loaded gallery, starting its load on the loader thread on a miss; concurrent
+     * requests for a gallery being loaded share that load. A failed load is reported to the next
+     * request, which then drops it so the one after tries again.
+     *
+     * @param wait     whether to wait for a gallery being loaded rather than fail
+     * @param countHit whether a hit counts towards the cache hit ratio; the checks made before the
+     *                 analysis count, so each request counts once
+     * @throws IllegalArgumentException when there is no such gallery
+     * @throws GalleryLoadingException  when the gallery is being loaded and {@code wait} is false
+     */
+    private CachedGallery gallery(String galleryName, boolean wait, boolean countHit) {
+        CachedGallery cached = cachedGallery(galleryName, countHit);
+        if (!wait && !cached.loaded.isDone()) {
+            throw new GalleryLoadingException("Gallery " + cached.name + " is loading");
+        }
+        try {
+            return cached.loaded.join();
+        } catch (CompletionException e) {
+            synchronized (galleries) {
+                galleries.remove(cached.name, cached);
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Cannot load gallery " + cached.name, e.getCause());
+        }
+    }
+
+    /**
+     * Returns the cache entry of the gallery, loaded or not, starting its load on a miss.
+     */
+    private CachedGallery cachedGallery(String galleryName, boolean countHit) {
+        String name = galleryName != null && !galleryName.isEmpty()
+                ? galleryName
+                : galleryProperties.getDefaultGallery();
+        if (!GALLERY_NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid gallery name " + name);
+        }
+        CachedGallery cached;
+        boolean load = false;
+        synchronized (galleries) {
+            cached = galleries.get(name);
+            if (cached == null) {
+                if (!Files.isRegularFile(projectPath(name))) {
+                    throw new IllegalArgumentException("Unknown gallery " + name);
+                }
+                cached = new CachedGallery(name);
+                galleries.put(name, cached);
+                load = true;
+                misses.increment();
+            } else if (countHit) {
+                hits.increment();
+            }
+        }
+        if (load) {
+            CachedGallery loading = cached;
+            loader.execute(() -> {
+                long start = System.nanoTime();
+                try {
+                    load(loading);
+                    loadLatency.recordSince(start);
+                    loading.loaded.complete(loading);
+                    evictBeyond(loading);
+                } catch (Throwable e) {
+                    // waiters must not hang on a load that ran out of memory either
+                    logger.error("Cannot load gallery " + loading.name, e);
+                    loading.loaded.completeExceptionally(e);
+                }
+            });
+        }
+        return cached;
+    }
+
+    /**
+     * Moves an enrollment log from before named galleries, kept right in {@code gallery.enrollment-path},
+     * to the default gallery. Refuses to start rather than pick one when that gallery has its own log too.
+     */
+    private void migrateLegacyEnrollments() throws IOException {
+        Path enrollmentPath = Paths.get(galleryProperties.getEnrollmentPath());
+        Path target = enrollmentPath.resolve(galleryProperties.getDefaultGallery());
+        for (String file : LEGACY_ENROLLMENT_FILES) {
+            Path legacy = enrollmentPath.resolve(file);
+            if (!Files.isRegularFile(legacy)) {
+                continue;
+            }
+            if (Files.exists(target.resolve(file))) {
+                throw new IllegalStateException("Both " + legacy + " from before named galleries and "
+                        + target.resolve(file) + " exist; keep the enrollment log of one of them");
+            }
+        }
+        for (String file : LEGACY_ENROLLMENT_FILES) {
+            Path legacy = enrollmentPath.resolve(file);
+            if (Files.isRegularFile(legacy)) {
+                Files.createDirectories(target);
+                Files.move(legacy, target.resolve(file));
+                logger.info("Moved enrollment log {} to {}", legacy, target.resolve(file));
+            }
+        }
+    }
+
+    private void load(CachedGallery cached) throws IOException {
+        Path projectPath = projectPath(cached.name);
+        EnrollmentLog enrollmentLog = new EnrollmentLog(
+                Paths.get(galleryProperties.getEnrollmentPath(), cached.name));
+        try {
+            cached.projectSize = Files.size(projectPath);
+            cached.projectModified = Files.getLastModifiedTime(projectPath).toMillis();
+            Gallery enrolled = enrollmentLog.read();
+            Gallery project = loadProjectGallery(cached.name, projectPath);
+            Gallery gallery = withEnrolled(cached.name, project, enrolled);
+            SimilarityMetric metric = "auto".equalsIgnoreCase(galleryProperties.getMetric())
+                    ? detectMetric(gallery)
+                    : SimilarityMetric.valueOf(galleryProperties.getMetric().toUpperCase());
+            cached.liveGallery = new LiveGallery(Matcher.build(gallery, metric, galleryProperties),
+                    galleryProperties.getCompactThreshold());
+            cached.enrollmentLog = enrollmentLog;
+            logger.info("Loaded gallery {} of {} descriptors ({} enrolled), dimension {}, metric {}, ~{} KB",
+                    cached.name, gallery.size(), enrolled.size(), gallery.getDimension(), metric,
+                    cached.liveGallery.sizeInBytes() >> 10);
+        } catch (IOException | RuntimeException e) {
+            enrollmentLog.close();
+            throw e;
+        }
+
+        metricsRegistry.gauge(versionGauge(cached.name), cached.liveGallery::version);
+        if (projectWatcher != null) {
+            try {
+                projectWatcher.watch(cached.name, projectPath);
+            } catch (IOException e) {
+                logger.warn("Cannot watch " + projectPath + ", changes need a restart", e);
+            }
+        }
     }
 
-    public List<Result> identify(PwFaceDescriptor descriptor) {
-        Comparator<Result> comparing = Comparator.comparing(Result::getQuality);
-        return faceMarks.stream().flatMap(mark -> compareWithMark(mark, descriptor))
-                .sorted(comparing.reversed())
-                .collect(Collectors.toList());
+    /**
+     * Rebuilds a loaded gallery from its changed project file, with the enrollments made meanwhile,
+     * and swaps it in. Until then requests keep searching the previous version, which also stays
+     * when the project cannot be read, e.g. because it is being saved again.
+     */
+    private void rebuild(String name) {
+        CachedGallery cached = loadedGallery(name);
+        if (cached == null) {
+            return;
+        }
+        Path projectPath = projectPath(name);
+        try {
+            long projectSize = Files.size(projectPath);
+            long projectModified = Files.getLastModifiedTime(projectPath).toMillis();
+            if (projectSize == cached.projectSize && projectModified == cached.projectModified) {
+                return;
+            }
+            long start = System.nanoTime();
+            Gallery enrolled = cached.enrollmentLog.read();
+            Gallery project = loadProjectGallery(name, projectPath);
+            Gallery gallery = withEnrolled(name, project, enrolled);
+            Matcher matcher = Matcher.build(gallery, cached.liveGallery.getBase().getMetric(), galleryProperties);
+            synchronized (cached) {
+                if (cached.closed) {
+                    return;
+                }
+                // enrollments are appended under the same lock, so none is missed between read and swap
+                Gallery enrolledSince = cached.enrollmentLog.read();
+                Gallery delta = matchesDimension(project, enrolledSince)
+                        ? enrolledSince.rows(enrolled.size(), enrolledSince.size()).adoptSubjectIds(project.getSubjects())
+                        : Gallery.of(project.getDimension(), new float[0], new int[0], SubjectTable.empty());
+                cached.liveGallery.replace(matcher, delta);
+                cached.projectSize = projectSize;
+                cached.projectModified = projectModified;
+            }
+            rebuildLatency.recordSince(start);
+            rebuilds.increment();
+            logger.info("Rebuilt gallery {} of {} descriptors in {} ms, now version {}", name,
+                    cached.liveGallery.size(), (System.nanoTime() - start) / 1000000, cached.liveGallery.version());
+            // the project may have grown past the budget
+            evictBeyond(cached);
+        } catch (IOException | RuntimeException e) {
+            rebuildFailures.increment();
+            logger.warn("Cannot rebuild gallery " + name + ", still serving the previous version", e);
+        }
     }
 
-    private Stream<Result> compareWithMark(FaceMark mark, PwFaceDescriptor refDescriptor) {
-        Optional<PwFaceDescriptor> descriptor = mark.getPwFaceData().getDescriptor();
-        Optional<Subject> subject = projectHolder.getSubject(mark.getSubjectId());
+    /**
+     * Project rows followed by the enrolled ones, which join the project subjects of their names.
+     * Enrollments of another dimension, e.g. made before the analyser changed, are left out rather
+     * than failing the whole gallery.
+     */
+    private Gallery withEnrolled(String galleryName, Gallery project, Gallery enrolled) {
+        if (!matchesDimension(project, enrolled)) {
+            logger.error("Ignoring {} enrolled descriptors of gallery {}, their dimension {} does not match {} "
+                    + "of the project", enrolled.size(), galleryName, enrolled.getDimension(), project.getDimension());
+            return project;
+        }
+        return project.concat(enrolled.adoptSubjectIds(project.getSubjects()));
+    }
+
+    private static boolean matchesDimension(Gallery project, Gallery enrolled) {
+        return enrolled.size() == 0 || project.size() == 0 || enrolled.getDimension() == project.getDimension();
+    }
+
+    /**
+     * Returns the gallery if it is loaded, without making it more recently used.
+     */
+    private CachedGallery loadedGallery(String name) {
+        synchronized (galleries) {
+            for (CachedGallery cached : galleries.values()) {
+                if (cached.name.equals(name) && cached.isLoaded()) {
+                    return cached;
+                }
+            }
+        }
+        return null;
+    }
+
+    private Path projectPath(String name) {
+        return Paths.get(galleryProperties.getProjectsPath(), name, PROJECT_FILE);
+    }
+
+    private static String versionGauge(String name) {
+        return "gallery_version{gallery=\"" + name + "\"}";
+    }
+
+    /**
+     * Drops the least recently used galleries, other than {@code keep}, until the rest fit the budget.
+     */
+    private void evictBeyond(CachedGallery keep) {
+        List<CachedGallery> evicted = new ArrayList<>();
+        synchronized (galleries) {
+            long bytes = residentBytes();
+            Iterator<CachedGallery> leastRecentlyUsed = galleries.values().iterator();
+            while (bytes > maxBytes && leastRecentlyUsed.hasNext()) {
+                CachedGallery cached = leastRecentlyUsed.next();
+                if (cached != keep && cached.isLoaded()) {
+                    bytes -= cached.liveGallery.sizeInBytes();
+                    leastRecentlyUsed.remove();
+                    evicted.add(cached);
+                }
+            }
+        }
+        for (CachedGallery cached : evicted) {
+            evictions.increment();
+            logger.info("Dropped gallery {} of ~{} KB, least recently used", cached.name,
+                    cached.liveGallery.sizeInBytes() >> 10);
+            close(cached);
+        }
+    }
+
+    private long residentBytes() {
+        long bytes = 0;
+        for (CachedGallery cached : galleries.values()) {
+            if (cached.isLoaded()) {
+                bytes += cached.liveGallery.sizeInBytes();
+            }
+        }
+        return bytes;
+    }
+
+    private void close(CachedGallery cached) {
+        if (!cached.isLoaded()) {
+            return;
+        }
+        if (projectWatcher != null) {
+            projectWatcher.unwatch(cached.name);
+        }
+        metricsRegistry.removeGauge(versionGauge(cached.name));
+        synchronized (cached) {
+            cached.closed = true;
+            cached.liveGallery.close();
+            try {
+                cached.enrollmentLog.close();
+            } catch (IOException e) {
+                logger.warn("Cannot close enrollment log of gallery " + cached.name, e);
+            }
+        }
+    }
+
+    /**
+     * Maps the gallery snapshot when it was taken from the current project file, otherwise
+     * deserialises the project and refreshes the snapshot.
+     */
+    private Gallery loadProjectGallery(String galleryName, Path projectPath) throws IOException {
+        long start = System.currentTimeMillis();
+        Optional<Gallery> snapshot = gallerySnapshot.read(galleryName, projectPath);
+        if (snapshot.isPresent()) {
+            logger.info("Mapped gallery snapshot of {} in {} ms", galleryName, System.currentTimeMillis() - start);
+            return snapshot.get();
+        }
+
+        long projectSize = Files.size(projectPath);
+        long projectModified = Files.getLastModifiedTime(projectPath).toMillis();
+        Gallery gallery;
+        // the holder keeps a single open project
+        synchronized (projectHolder) {
+            projectHolder.openProject(projectPath.toString())
+                    .orElseThrow(() -> new IllegalStateException("Cannot deserialize project " + projectPath));
+            try {
+                gallery = Gallery.of(projectHolder.getFaceMarks(), SubjectTable.of(projectHolder.getSubjects()));
+            } finally {
+                projectHolder.closeProject();
+            }
+        }
+        logger.info("Deserialized project {} in {} ms", projectPath, System.currentTimeMillis() - start);
+        try {
+            gallerySnapshot.write(galleryName, projectPath, projectSize, projectModified, gallery);
+        } catch (IOException e) {
+            logger.warn("Cannot write gallery snapshot, the next load will deserialize the project again", e);
+        }
+        return gallery;
+    }
+
+    /**
+     * Compares a few gallery rows through the native library and returns the first metric
+     * reproducing all of them, or {@link SimilarityMetric#COSINE} when none does.
+     */
+    private SimilarityMetric detectMetric(Gallery gallery) {
+        int samples = Math.min(METRIC_SAMPLES, gallery.size() - 1);
+        if (samples <= 0) {
+            logger.warn("Gallery too small to verify the similarity metric, assuming {}", SimilarityMetric.COSINE);
+            return SimilarityMetric.COSINE;
+        }
+        float[] expected = new float[samples];
+        for (int i = 0; i < samples; i++) {
+            PwFaceDescriptor first = new PwFaceDescriptor(gallery.row(i), 1);
+            PwFaceDescriptor second = new PwFaceDescriptor(gallery.row(i + 1), 1);
+            expected[i] = analyserService.compareDescriptors(first, second);
+        }
+        for (SimilarityMetric candidate : SimilarityMetric.values()) {
+            boolean matches = true;
+            for (int i = 0; i < samples && matches; i++) {
+                float actual = candidate.score(gallery.row(i), gallery.row(i + 1));
+                matches = Math.abs(actual - expected[i]) <= METRIC_TOLERANCE;
+            }
+            if (matches) {
+                return candidate;
+            }
+        }
+        logger.warn("None of the similarity metrics reproduces the native one, assuming {}; "
+                + "set gallery.metric explicitly to silence this", SimilarityMetric.COSINE);
+        return SimilarityMetric.COSINE;
+    }
+
+    /**
+     * Gallery of one name, present in the cache from the moment its load starts.
+     */
+    private static final class CachedGallery {
+        private final String name;
+        private final CompletableFuture<CachedGallery> loaded = new CompletableFuture<>();
+        private LiveGallery liveGallery;
+        private EnrollmentLog enrollmentLog;
+        private boolean closed;
+        /**
+         * Project file version the gallery was built from, used by the rebuild thread.
+         */
+        private long projectSize;
+        private long projectModified;
+
+        CachedGallery(String name) {
+            this.name = name;
+        }
 
-        if (descriptor.isPresent() && subject.isPresent()) {
-            float quality = analyserService.compareDescriptors(descriptor.get(), refDescriptor);
-            return Stream.of(Result.of(subject.get().getName(), quality));
-        } else {
-            return Stream.empty();
+        boolean isLoaded() {
+            return loaded.isDone() && !loaded.isCompletedExceptionally();
         }
     }
 }
@@ -0,0 +1,73 @@
+package greeting.robot.server;
+
+import pl.edu.agh.biowiz.model.detected.ImageRectangle;
+
+/**
+ * Where the client says the face is, bound from the {@code crop} and {@code faceX}, {@code faceY},
+ * {@code faceWidth}, {@code faceHeight} request parameters. Without either, the whole image is
+ * searched for a face.
+ */
+public class FaceRegion {
+    /**
+     * Whether the whole image is a face crop to describe without detection.
+     */
+    private boolean crop;
+    private Integer faceX;
+    private Integer faceY;
+    private Integer faceWidth;
+    private Integer faceHeight;
+
+    public boolean isCrop() {
+        return crop;
+    }
+
+    public void setCrop(boolean crop) {
+        this.crop = crop;
+    }
+
+    public Integer getFaceX() {
+        return faceX;
+    }
+
+    public void setFaceX(Integer faceX) {
+        this.faceX = faceX;
+    }
+
+    public Integer getFaceY() {
+        return faceY;
+    }
+
+    public void setFaceY(Integer faceY) {
+        this.faceY = faceY;
+    }
+
+    public Integer getFaceWidth() {
+        return faceWidth;
+    }
+
+    public void setFaceWidth(Integer faceWidth) {
+        this.faceWidth = faceWidth;
+    }
+
+    public Integer getFaceHeight() {
+        return faceHeight;
+    }
+
+    public void setFaceHeight(Integer faceHeight) {
+        this.faceHeight = faceHeight;
+    }
+
+    /**
+     * @return face rectangle in uploaded image coordinates, null when none was given
+     * @throws IllegalArgumentException if only some of its coordinates were given
+     */
+    public ImageRectangle getRectangle() {
+        if (faceX == null && faceY == null && faceWidth == null && faceHeight == null) {
+            return null;
+        }
+        if (faceX == null || faceY == null || faceWidth == null || faceHeight == null) {
+            throw new IllegalArgumentException("faceX, faceY, faceWidth and faceHeight must be given together");
+        }
+        return new ImageRectangle(faceX, faceY, faceWidth, faceHeight);
+    }
+}
@@ -0,0 +1,12 @@
+package greeting.robot.server;
+
+/**
+ * Thrown when the requested gallery is still being loaded, the request should be retried later.
+ */
+public class GalleryLoadingException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public GalleryLoadingException(String message) {
+        super(message);
+    }
+}
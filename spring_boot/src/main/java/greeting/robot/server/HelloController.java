@@ -3,130 +3,325 @@ package greeting.robot.server;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import greeting.robot.data.api.ErrorResult;
+import greeting.robot.data.api.ImageResult;
 import greeting.robot.data.api.Result;
+import greeting.robot.data.api.ResultCodec;
+import greeting.robot.server.metrics.LatencyHistogram;
+import greeting.robot.server.metrics.MetricsRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
-import pl.edu.agh.biowiz.model.detected.PwDetectedFace;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 import pl.edu.agh.biowiz.model.profile.PwFaceDescriptor;
 
-import javax.imageio.ImageIO;
+import javax.annotation.PostConstruct;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.File;
-import java.io.FileOutputStream;
-import java.util.Arrays;
-import java.util.Comparator;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 public class HelloController {
 
     private final Logger logger = LoggerFactory.getLogger(HelloController.class);
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final String EMPTY_RESPONSE = "[]";
+    private static final byte[] EMPTY_RESPONSE = "[]".getBytes(StandardCharsets.UTF_8);
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final MediaType RESULTS = MediaType.parseMediaType(ResultCodec.MEDIA_TYPE);
 
     @Autowired
     private AnalyserService analyserService;
 
+    @Autowired
+    private RecognitionService recognitionService;
+
     @Autowired
     private DescriptorService descriptorService;
 
+    @Autowired
+    private ImageDecoder imageDecoder;
+
+    @Autowired
+    private UploadExecutor uploadExecutor;
+
+    @Autowired
+    private UploadProperties uploadProperties;
+
+    @Autowired
+    private MetricsRegistry metricsRegistry;
+
+    private LatencyHistogram uploadReadLatency;
+    private LatencyHistogram serialiseLatency;
+
+    @PostConstruct
+    public void postConstruct() {
+        uploadReadLatency = metricsRegistry.histogram("recognition_upload_read_seconds");
+        serialiseLatency = metricsRegistry.histogram("recognition_serialise_seconds");
+    }
+
     @RequestMapping("/")
     public String index() {
         return "Greetings from Spring Boot!";
     }
 
-    @RequestMapping(value = "/uploadFile", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+    /**
+     * Recognises the uploaded image on the {@link UploadExecutor}, answering 503 right away when
+     * its queue is full. The answer is JSON unless {@link ResultCodec#MEDIA_TYPE} is accepted.
+     */
+    @RequestMapping(value = "/uploadFile", method = RequestMethod.POST,
+            produces = {MediaType.APPLICATION_JSON_VALUE, ResultCodec.MEDIA_TYPE})
     @ResponseBody
-    public String uploadFileHandler(@RequestParam("file") MultipartFile file) {
+    public CompletableFuture<ResponseEntity<byte[]>> uploadFileHandler(
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "gallery", required = false) String gallery,
+            @RequestParam(value = "k", defaultValue = "3") int k,
+            @RequestParam(value = "minQuality", required = false) Float minQuality,
+            @ModelAttribute FaceRegion faceRegion) throws IOException {
+        boolean binary = acceptsBinary(accept);
         if (file.isEmpty()) {
             logger.warn("You failed to upload file because the it was empty.");
-            return EMPTY_RESPONSE;
+            return CompletableFuture.completedFuture(resultsResponse(Collections.emptyList(), binary));
         }
-        try {
-            double startTime, detectTime, descTime;
-            byte[] bytes = file.getBytes();
+        long start = System.nanoTime();
+        byte[] bytes = file.getBytes();
+        uploadReadLatency.recordSince(start);
+        return submit(binary, () -> {
+            DecodedImage decodedImage = imageDecoder.decode(bytes);
 
-            ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-            BufferedImage bufferedImage = ImageIO.read(bais);
+            logger.debug("File has been successfully uploaded, decoded with subsampling {}",
+                    decodedImage.getSubsampling());
 
-            logger.debug("File has been successfully uploaded");
+            return identify(gallery, decodedImage, faceRegion, k, minQuality, binary);
+        });
+    }
 
-            startTime = System.currentTimeMillis();
+    /**
+     * Same as {@link #uploadFileHandler} for uncompressed 8 bit pixels, BGR interleaved or grayscale,
+     * sent as the request body, so neither side pays for a JPEG round trip.
+     */
+    @RequestMapping(value = "/uploadRaw", method = RequestMethod.POST,
+            consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE,
+            produces = {MediaType.APPLICATION_JSON_VALUE, ResultCodec.MEDIA_TYPE})
+    @ResponseBody
+    public CompletableFuture<ResponseEntity<byte[]>> uploadRawHandler(
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestBody byte[] pixels,
+            @RequestHeader("X-Image-Width") int width,
+            @RequestHeader("X-Image-Height") int height,
+            @RequestHeader(value = "X-Image-Channels", defaultValue = "3") int channels,
+            @RequestParam(value = "gallery", required = false) String gallery,
+            @RequestParam(value = "k", defaultValue = "3") int k,
+            @RequestParam(value = "minQuality", required = false) Float minQuality,
+            @ModelAttribute FaceRegion faceRegion) {
+        boolean binary = acceptsBinary(accept);
+        return submit(binary, () -> {
+            BufferedImage bufferedImage = RawImages.wrap(pixels, width, height, channels);
 
-            Optional<PwDetectedFace> pwDetectedFace = analyserService.detect(bufferedImage);
+            logger.debug("Raw {}x{}x{} image has been successfully uploaded", width, height, channels);
 
-            detectTime = System.currentTimeMillis();
+            return identify(gallery, DecodedImage.of(bufferedImage), faceRegion, k, minQuality, binary);
+        });
+    }
 
-            Optional<PwFaceDescriptor> descriptor = pwDetectedFace.flatMap(face -> {
-                logger.debug("Found following face on image: {}", face);
-                return analyserService.describe(face, bufferedImage).getDescriptor();
+    private CompletableFuture<ResponseEntity<byte[]>> submit(boolean binary,
+                                                             Callable<ResponseEntity<byte[]>> recognition) {
+        try {
+            return uploadExecutor.submit(() -> {
+                try {
+                    return recognition.call();
+                } catch (Exception e) {
+                    return errorResponse(e, binary);
+                }
             });
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(errorResponse(e, binary));
+        }
+    }
 
-            descTime = System.currentTimeMillis();
-
-            logger.debug("Detect: {}; Descriptor: {}; Total: {}",
-                    (detectTime - startTime) / 1000,
-                    (descTime - detectTime) / 1000,
-                    (descTime - startTime) / 1000);
-
-            if (descriptor.isPresent()) {
-                PwFaceDescriptor pwFaceDescriptor = descriptor.get();
-                logger.debug("quality: {}", pwFaceDescriptor.getQuality());
-                List<Result> detectedFaces = descriptorService.identify(pwFaceDescriptor);
-                detectedFaces.sort(Comparator.reverseOrder());
-                int endIndex = detectedFaces.size() > 3 ? 3 : detectedFaces.size();
-                String result = objectMapper.writeValueAsString(detectedFaces.subList(0, endIndex));
-                logger.debug("Returning following detections: {}", result);
-                return result;
-            } else {
-                logger.warn("No faces found");
-                ErrorResult errorResult = new ErrorResult();
-                errorResult.setMessage("No faces found");
-                return objectMapper.writeValueAsString(errorResult);
-            }
+    /**
+     * Only an explicit mention switches to the binary encoding, wildcards keep JSON.
+     */
+    private static boolean acceptsBinary(String accept) {
+        if (accept == null || !accept.contains(ResultCodec.MEDIA_TYPE)) {
+            return false;
+        }
+        return MediaType.parseMediaTypes(accept).stream()
+                .anyMatch(mediaType -> RESULTS.equals(mediaType.removeQualityValue())
+                        && mediaType.getQualityValue() > 0);
+    }
+
+    /**
+     * Identifies the uploaded images concurrently on the {@link UploadExecutor}, at most
+     * {@code upload.batch-parallelism} at a time, and streams one {@link ImageResult} JSON line per
+     * image as soon as it is done, in completion order. The gallery is checked before any image is
+     * read; the request is answered with 503 while it loads or when the upload queue admits none of
+     * its images.
+     */
+    @RequestMapping(value = "/uploadFiles", method = RequestMethod.POST)
+    public ResponseEntity<ResponseBodyEmitter> uploadFilesHandler(
+            @RequestParam("files") MultipartFile[] files,
+            @RequestParam(value = "gallery", required = false) String gallery,
+            @RequestParam(value = "k", defaultValue = "3") int k,
+            @RequestParam(value = "minQuality", required = false) Float minQuality) throws IOException {
+        try {
+            descriptorService.checkReady(gallery);
+        } catch (IllegalArgumentException | GalleryLoadingException e) {
+            return errorLine(e);
+        }
+        String[] fileNames = new String[files.length];
+        byte[][] images = new byte[files.length][];
+        for (int i = 0; i < files.length; i++) {
+            fileNames[i] = files[i].getOriginalFilename();
+            long start = System.nanoTime();
+            images[i] = files[i].getBytes();
+            uploadReadLatency.recordSince(start);
+        }
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter();
+        int parallelism = uploadProperties.getBatchParallelism() > 0
+                ? uploadProperties.getBatchParallelism() : uploadExecutor.getWorkers();
+        ImageBatch batch = new ImageBatch(uploadExecutor, files.length, parallelism,
+                index -> identifyImage(gallery, index, fileNames[index], images[index], k, minQuality),
+                result -> {
+                    try {
+                        long serialiseStart = System.nanoTime();
+                        String line = objectMapper.writeValueAsString(result) + "\n";
+                        serialiseLatency.recordSince(serialiseStart);
+                        emitter.send(line, MediaType.TEXT_PLAIN);
+                    } catch (IOException | IllegalStateException e) {
+                        logger.warn("Cannot stream result of image {}: {}", result.getIndex(), e.getMessage());
+                        emitter.completeWithError(e);
+                    }
+                },
+                emitter::complete);
+        try {
+            batch.start();
+        } catch (RejectedExecutionException e) {
+            logger.warn("Rejecting {} images: {}", files.length, e.getMessage());
+            return errorLine(e);
+        }
+        return ResponseEntity.ok().contentType(NDJSON).body(emitter);
+    }
+
+    /**
+     * A single {@link ErrorResult} line, with 503 and a Retry-After hint on overload.
+     */
+    private ResponseEntity<ResponseBodyEmitter> errorLine(RuntimeException e) throws IOException {
+        ErrorResult errorResult = new ErrorResult();
+        errorResult.setMessage(e.getMessage());
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter();
+        emitter.send(objectMapper.writeValueAsString(errorResult) + "\n", MediaType.TEXT_PLAIN);
+        emitter.complete();
+        ResponseEntity.BodyBuilder response = e instanceof IllegalArgumentException
+                ? ResponseEntity.ok()
+                : ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(uploadProperties.getRetryAfterSeconds()));
+        return response.contentType(NDJSON).body(emitter);
+    }
+
+    private ImageResult identifyImage(String gallery, int index, String fileName, byte[] bytes, int k,
+                                      Float minQuality) {
+        try {
+            DecodedImage decodedImage = imageDecoder.decode(bytes);
+            return recognitionService.identify(gallery, decodedImage, new FaceRegion(), k, minQuality)
+                    .map(results -> ImageResult.of(index, fileName, results))
+                    .orElseGet(() -> ImageResult.failed(index, fileName, RecognitionService.NO_FACES));
         } catch (Exception e) {
+            logger.error("Identifying image " + index + " failed", e);
+            return ImageResult.failed(index, fileName, e.getMessage());
+        }
+    }
+
+    private ResponseEntity<byte[]> identify(String gallery, DecodedImage decodedImage, FaceRegion faceRegion, int k,
+                                            Float minQuality, boolean binary)
+            throws JsonProcessingException, InterruptedException {
+        Optional<List<Result>> results = recognitionService.identify(gallery, decodedImage, faceRegion, k,
+                minQuality);
+        if (results.isPresent()) {
+            long start = System.nanoTime();
+            ResponseEntity<byte[]> response = resultsResponse(results.get(), binary);
+            serialiseLatency.recordSince(start);
+            logger.debug("Returning following detections: {}", results.get());
+            return response;
+        }
+        ErrorResult errorResult = new ErrorResult();
+        errorResult.setMessage(RecognitionService.NO_FACES);
+        return errorResultResponse(ResponseEntity.ok(), errorResult, binary);
+    }
+
+    private ResponseEntity<byte[]> resultsResponse(List<Result> results, boolean binary)
+            throws JsonProcessingException {
+        if (binary) {
+            return ResponseEntity.ok().contentType(RESULTS).body(ResultCodec.encode(results));
+        }
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(objectMapper.writeValueAsBytes(results));
+    }
+
+    private ResponseEntity<byte[]> errorResultResponse(ResponseEntity.BodyBuilder response, ErrorResult errorResult,
+                                                       boolean binary) throws JsonProcessingException {
+        if (binary) {
+            return response.contentType(RESULTS).body(ResultCodec.encode(errorResult));
+        }
+        return response.contentType(MediaType.APPLICATION_JSON).body(objectMapper.writeValueAsBytes(errorResult));
+    }
+
+    /**
+     * Overload, i.e. a full upload queue, no free analyser or a gallery still loading, is answered with 503 and a Retry-After
+     * hint, any other failure with an {@link ErrorResult}.
+     */
+    private ResponseEntity<byte[]> errorResponse(Exception e, boolean binary) {
+        boolean overloaded = e instanceof AnalyserBusyException || e instanceof RejectedExecutionException
+                || e instanceof GalleryLoadingException;
+        if (overloaded) {
+            logger.warn("Rejecting request: {}", e.getMessage());
+        } else {
             logger.error("Error occurred", e);
-            ErrorResult errorResult = new ErrorResult();
-            errorResult.setMessage(e.getMessage());
-            try {
-                return objectMapper.writeValueAsString(errorResult);
-            } catch (JsonProcessingException ex) {
-                logger.error("", ex);
-                return EMPTY_RESPONSE;
-            }
+        }
+        ErrorResult errorResult = new ErrorResult();
+        errorResult.setMessage(e.getMessage());
+        ResponseEntity.BodyBuilder response = overloaded
+                ? ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(uploadProperties.getRetryAfterSeconds()))
+                : ResponseEntity.ok();
+        try {
+            return errorResultResponse(response, errorResult, binary);
+        } catch (JsonProcessingException ex) {
+            logger.error("", ex);
+            return response.contentType(MediaType.APPLICATION_JSON).body(EMPTY_RESPONSE);
         }
     }
 
     @RequestMapping(value = "/createDescriptor", method = RequestMethod.POST)
     @ResponseStatus(value = HttpStatus.NO_CONTENT)
     public void createDescriptor(@RequestParam("name") String name,
+                                 @RequestParam(value = "gallery", required = false) String gallery,
                                  @RequestParam("file") MultipartFile file) {
         if (file.isEmpty()) {
             logger.warn("Creating descriptor for " + name + " failed due to empty content.");
             return;
         }
         try {
-            byte[] bytes = file.getBytes();
-
-            ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-            BufferedImage bufferedImage = ImageIO.read(bais);
+            descriptorService.prepare(gallery);
+            BufferedImage bufferedImage = imageDecoder.decode(file.getBytes()).getImage();
 
             logger.debug("File <{}> has been successfully uploaded", name);
 
             Optional<PwFaceDescriptor> desc = analyserService.getDescriptorFor(bufferedImage);
 
             if (desc.isPresent()) {
-                PwFaceDescriptor descriptor = desc.get();
-                try (FileOutputStream fos = new FileOutputStream(new File(name + ".txt"))) {
-                    fos.write(Arrays.toString(descriptor.getDescriptor()).getBytes());
-                }
+                descriptorService.enroll(gallery, name, desc.get());
+                logger.debug("Enrolled descriptor of <{}>", name);
             } else {
                 logger.warn("Descriptor could not be created");
             }
@@ -0,0 +1,102 @@
+package greeting.robot.server;
+
+import greeting.robot.data.api.ImageResult;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Identifies the images of one multi-image request on a shared bounded executor, at most
+ * {@code parallelism} of them at a time: the next image is submitted as soon as one finishes,
+ * so a large batch neither floods the executor's queue nor gets its images rejected.
+ * <p>
+ * An image the full queue rejects waits for the next image of the batch to finish; when none is
+ * in flight any more, the thread that finished the last one identifies it itself.
+ */
+class ImageBatch {
+    private final Executor executor;
+    private final int parallelism;
+    private final IntFunction<ImageResult> identify;
+    private final Consumer<ImageResult> sink;
+    private final Runnable done;
+    private final Deque<Integer> pending = new ArrayDeque<>();
+    private int inFlight;
+    private int remaining;
+
+    /**
+     * @param identify identifies the image of an index, never throws
+     * @param sink     receives every result, from whichever thread produced it
+     * @param done     runs once after the last result was passed to the sink
+     */
+    ImageBatch(Executor executor, int images, int parallelism, IntFunction<ImageResult> identify,
+               Consumer<ImageResult> sink, Runnable done) {
+        this.executor = executor;
+        this.parallelism = Math.max(1, parallelism);
+        this.identify = identify;
+        this.sink = sink;
+        this.done = done;
+        this.remaining = images;
+        for (int i = 0; i < images; i++) {
+            pending.add(i);
+        }
+    }
+
+    /**
+     * Submits the first images.
+     *
+     * @throws RejectedExecutionException when not even the first image was admitted; nothing runs then
+     */
+    void start() {
+        if (remaining == 0) {
+            done.run();
+            return;
+        }
+        synchronized (this) {
+            submitPending();
+            if (inFlight == 0) {
+                throw new RejectedExecutionException("Upload queue is full");
+            }
+        }
+    }
+
+    /**
+     * Must hold the lock.
+     */
+    private void submitPending() {
+        while (inFlight < parallelism && !pending.isEmpty()) {
+            int index = pending.poll();
+            try {
+                executor.execute(() -> finished(identify.apply(index)));
+            } catch (RejectedExecutionException e) {
+                pending.addFirst(index);
+                return;
+            }
+            inFlight++;
+        }
+    }
+
+    private void finished(ImageResult result) {
+        while (result != null) {
+            sink.accept(result);
+            Integer runHere = null;
+            boolean last;
+            synchronized (this) {
+                inFlight--;
+                last = --remaining == 0;
+                submitPending();
+                if (inFlight == 0 && !pending.isEmpty()) {
+                    runHere = pending.poll();
+                    inFlight++;
+                }
+            }
+            if (last) {
+                done.run();
+            }
+            result = runHere != null ? identify.apply(runHere) : null;
+        }
+    }
+}
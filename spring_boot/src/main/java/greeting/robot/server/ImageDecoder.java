@@ -0,0 +1,83 @@
+package greeting.robot.server;
+
+import greeting.robot.server.metrics.LatencyHistogram;
+import greeting.robot.server.metrics.MetricsRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Decodes uploaded images no larger than {@link UploadProperties#getMaxImageSize()}.
+ * <p>
+ * The dimensions are read from the header first and bigger images are decoded with source
+ * subsampling, so the reader skips the extra pixels instead of a full size raster being
+ * allocated and scaled down afterwards.
+ */
+@Component
+public class ImageDecoder {
+
+    @Autowired
+    private UploadProperties uploadProperties;
+
+    @Autowired
+    private MetricsRegistry metricsRegistry;
+
+    private LatencyHistogram decodeLatency;
+
+    @PostConstruct
+    public void postConstruct() {
+        decodeLatency = metricsRegistry.histogram("recognition_decode_seconds");
+    }
+
+    public DecodedImage decode(byte[] bytes) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return read(bytes);
+        } finally {
+            decodeLatency.recordSince(start);
+        }
+    }
+
+    private DecodedImage read(byte[] bytes) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(bytes))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IllegalArgumentException("Unsupported image format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                int subsampling = subsampling(width, height, uploadProperties.getMaxImageSize());
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                return new DecodedImage(reader.read(0, param), width, height, subsampling);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Smallest integer factor bringing the longest side within {@code maxSize}.
+     */
+    static int subsampling(int width, int height, int maxSize) {
+        int longest = Math.max(width, height);
+        if (maxSize <= 0 || longest <= maxSize) {
+            return 1;
+        }
+        return (longest + maxSize - 1) / maxSize;
+    }
+}
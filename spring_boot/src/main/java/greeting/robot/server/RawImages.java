@@ -0,0 +1,44 @@
+package greeting.robot.server;
+
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+/**
+ * Wraps uncompressed 8 bit pixels, as held by OpenCV {@code Mat}s, into {@link BufferedImage}s
+ * without copying them: the array becomes the image raster.
+ */
+public final class RawImages {
+    private static final int[] BGR_OFFSETS = {2, 1, 0};
+    private static final int[] GRAY_OFFSETS = {0};
+    private static final ComponentColorModel BGR_MODEL = new ComponentColorModel(
+            ColorSpace.getInstance(ColorSpace.CS_sRGB), false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+    private static final ComponentColorModel GRAY_MODEL = new ComponentColorModel(
+            ColorSpace.getInstance(ColorSpace.CS_GRAY), false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+
+    private RawImages() {
+    }
+
+    /**
+     * @param pixels   rows top to bottom, without padding; interleaved B, G, R bytes for 3 channels
+     * @param channels 3 for BGR or 1 for grayscale
+     * @return image of type {@link BufferedImage#TYPE_3BYTE_BGR} or {@link BufferedImage#TYPE_BYTE_GRAY}
+     */
+    public static BufferedImage wrap(byte[] pixels, int width, int height, int channels) {
+        if (channels != 1 && channels != 3) {
+            throw new IllegalArgumentException("Unsupported number of channels: " + channels);
+        }
+        if (width <= 0 || height <= 0 || (long) width * height * channels != pixels.length) {
+            throw new IllegalArgumentException("Expected " + width + "x" + height + "x" + channels
+                    + " pixels but got " + pixels.length + " bytes");
+        }
+        WritableRaster raster = Raster.createInterleavedRaster(new DataBufferByte(pixels, pixels.length),
+                width, height, width * channels, channels, channels == 3 ? BGR_OFFSETS : GRAY_OFFSETS, null);
+        return new BufferedImage(channels == 3 ? BGR_MODEL : GRAY_MODEL, raster, false, null);
+    }
+}
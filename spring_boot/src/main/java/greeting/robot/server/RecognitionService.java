@@ -0,0 +1,92 @@
+package greeting.robot.server;
+
+import greeting.robot.data.api.Result;
+import greeting.robot.server.metrics.LatencyHistogram;
+import greeting.robot.server.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import pl.edu.agh.biowiz.model.detected.ImageRectangle;
+import pl.edu.agh.biowiz.model.detected.PwDetectedFace;
+import pl.edu.agh.biowiz.model.profile.PwFaceDescriptor;
+
+import javax.annotation.PostConstruct;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Detects, describes and matches the face of one image, whichever transport it came over.
+ */
+@Service
+public class RecognitionService {
+    public static final String NO_FACES = "No faces found";
+
+    private final Logger logger = LoggerFactory.getLogger(RecognitionService.class);
+
+    @Autowired
+    private AnalyserService analyserService;
+
+    @Autowired
+    private AnalysisBatcher analysisBatcher;
+
+    @Autowired
+    private DescriptorService descriptorService;
+
+    @Autowired
+    private MetricsRegistry metricsRegistry;
+
+    private LatencyHistogram matchLatency;
+
+    @PostConstruct
+    public void postConstruct() {
+        matchLatency = metricsRegistry.histogram("recognition_match_seconds");
+    }
+
+    /**
+     * Identifies the face of the image. A face crop is described right away and a face rectangle is
+     * only searched within, which both skip the full frame detection pass. The gallery is checked
+     * before the image is analysed.
+     *
+     * @param gallery name of the gallery to search, null for the default one
+     * @return best matches, or empty when there is no face on the image
+     * @throws IllegalArgumentException when there is no such gallery
+     * @throws GalleryLoadingException  when the gallery is still loading
+     */
+    public Optional<List<Result>> identify(String gallery, DecodedImage decodedImage, FaceRegion faceRegion, int k,
+                                           Float minQuality) throws InterruptedException {
+        descriptorService.checkReady(gallery);
+        BufferedImage bufferedImage = decodedImage.getImage();
+        ImageRectangle faceRectangle = faceRegion.getRectangle();
+
+        Optional<PwFaceDescriptor> descriptor;
+        if (faceRegion.isCrop()) {
+            descriptor = analyserService.describeCrop(bufferedImage);
+        } else if (faceRectangle == null && analysisBatcher.isEnabled()) {
+            descriptor = analysisBatcher.getDescriptorFor(bufferedImage);
+        } else {
+            Optional<PwDetectedFace> pwDetectedFace = faceRectangle != null
+                    ? analyserService.detect(bufferedImage, decodedImage.fromSource(faceRectangle))
+                    : analyserService.detect(bufferedImage);
+
+            descriptor = pwDetectedFace.flatMap(face -> {
+                logger.debug("Found following face on image: {}", decodedImage.toSource(face));
+                return analyserService.describe(face, bufferedImage).getDescriptor();
+            });
+        }
+
+        if (descriptor.isPresent()) {
+            PwFaceDescriptor pwFaceDescriptor = descriptor.get();
+            logger.debug("quality: {}", pwFaceDescriptor.getQuality());
+            long start = System.nanoTime();
+            List<Result> results = descriptorService.identify(gallery, pwFaceDescriptor, k,
+                    minQuality != null ? minQuality : Float.NEGATIVE_INFINITY);
+            matchLatency.recordSince(start);
+            return Optional.of(results);
+        } else {
+            logger.warn(NO_FACES);
+            return Optional.empty();
+        }
+    }
+}
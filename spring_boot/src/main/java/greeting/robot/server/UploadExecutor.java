@@ -0,0 +1,86 @@
+package greeting.robot.server;
+
+import greeting.robot.server.metrics.MetricsRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bounded pool recognising uploads off the servlet container threads.
+ * <p>
+ * At most {@code upload.queue-capacity} uploads wait for one of the workers; beyond that
+ * {@link #submit} fails immediately, so a burst is shed instead of queueing up latency for
+ * every admitted request.
+ */
+@Component
+public class UploadExecutor implements Executor {
+
+    @Autowired
+    private UploadProperties uploadProperties;
+
+    @Autowired
+    private AnalyserProperties analyserProperties;
+
+    @Autowired
+    private MetricsRegistry metricsRegistry;
+
+    private ThreadPoolExecutor executor;
+    private LongAdder rejected;
+
+    @PostConstruct
+    public void postConstruct() {
+        int workers = uploadProperties.getWorkers();
+        if (workers <= 0) {
+            AnalyserProperties.Batch batch = analyserProperties.getBatch();
+            workers = analyserProperties.getPoolSize() * (batch.isEnabled() ? batch.getMaxSize() : 1);
+        }
+        AtomicInteger threads = new AtomicInteger();
+        rejected = metricsRegistry.counter("upload_rejected_total");
+        executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(uploadProperties.getQueueCapacity()),
+                runnable -> new Thread(runnable, "upload-" + threads.incrementAndGet()),
+                (runnable, pool) -> {
+                    rejected.increment();
+                    throw new RejectedExecutionException("Upload queue is full");
+                });
+        metricsRegistry.gauge("upload_workers", executor::getMaximumPoolSize);
+        metricsRegistry.gauge("upload_queue_capacity", uploadProperties::getQueueCapacity);
+        metricsRegistry.gauge("upload_queue_depth", () -> executor.getQueue().size());
+        metricsRegistry.gauge("upload_active", executor::getActiveCount);
+    }
+
+    @PreDestroy
+    public void preDestroy() {
+        executor.shutdown();
+    }
+
+    public int getWorkers() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * @throws RejectedExecutionException right away when the queue is full
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, executor);
+    }
+
+    /**
+     * @throws RejectedExecutionException right away when the queue is full
+     */
+    @Override
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+}
@@ -0,0 +1,75 @@
+package greeting.robot.server;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Upload handling settings bound from the {@code upload.*} keys of application.properties.
+ */
+@Component
+@ConfigurationProperties(prefix = "upload")
+public class UploadProperties {
+
+    /**
+     * Longest side, in pixels, an uploaded image is decoded to; larger ones are subsampled while
+     * decoding. Not positive to decode at full size.
+     */
+    private int maxImageSize = 1024;
+    /**
+     * Threads recognising uploads; not positive to match the analysers, times the batch size when batching.
+     */
+    private int workers = 0;
+    /**
+     * Uploads waiting for a worker beyond which new ones are rejected with 503.
+     */
+    private int queueCapacity = 32;
+    /**
+     * Images of one multi-image upload being recognised at a time; the next is queued as one finishes.
+     * Not positive to match the workers.
+     */
+    private int batchParallelism = 0;
+    /**
+     * Retry-After sent with rejections.
+     */
+    private int retryAfterSeconds = 1;
+
+    public int getMaxImageSize() {
+        return maxImageSize;
+    }
+
+    public void setMaxImageSize(int maxImageSize) {
+        this.maxImageSize = maxImageSize;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public int getBatchParallelism() {
+        return batchParallelism;
+    }
+
+    public void setBatchParallelism(int batchParallelism) {
+        this.batchParallelism = batchParallelism;
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    public void setRetryAfterSeconds(int retryAfterSeconds) {
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -0,0 +1,93 @@
+package greeting.robot.server.channel;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Binary channel settings bound from the {@code channel.*} keys of application.properties.
+ */
+@Component
+@ConfigurationProperties(prefix = "channel")
+public class ChannelProperties {
+
+    private boolean enabled = true;
+    private int port = 9998;
+    /**
+     * Interface the channel listens on; 0.0.0.0 for all of them, as the HTTP port and the robot expect.
+     */
+    private String address = "0.0.0.0";
+    /**
+     * Longest request frame accepted, in bytes; a longer one closes the connection before anything is
+     * allocated for it.
+     */
+    private int maxFrameLength = 8 << 20;
+    /**
+     * Open connections beyond which new ones are closed right after being accepted.
+     */
+    private int maxConnections = 16;
+    /**
+     * Requests of one connection read but not answered yet beyond which no further frame is read from it.
+     */
+    private int maxInFlight = 8;
+    /**
+     * Time a connection with no request in flight may stay silent, and a started frame may take to
+     * arrive, before the connection is closed.
+     */
+    private int readTimeoutMs = 60000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public void setAddress(String address) {
+        this.address = address;
+    }
+
+    public int getMaxFrameLength() {
+        return maxFrameLength;
+    }
+
+    public void setMaxFrameLength(int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public int getReadTimeoutMs() {
+        return readTimeoutMs;
+    }
+
+    public void setReadTimeoutMs(int readTimeoutMs) {
+        this.readTimeoutMs = readTimeoutMs;
+    }
+}
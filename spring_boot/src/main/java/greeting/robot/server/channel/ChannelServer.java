@@ -0,0 +1,244 @@
+package greeting.robot.server.channel;
+
+import greeting.robot.data.api.ChannelRequest;
+import greeting.robot.data.api.ChannelResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TCP server of length-prefixed {@link ChannelRequest} frames, answered with {@link ChannelResponse}s.
+ * <p>
+ * Every connection has one thread reading requests and handing them to the executor, so a client may
+ * keep up to {@code channel.max-in-flight} requests in flight, and one thread writing the responses
+ * in completion order, tagged with the request id. The executor never writes to a socket itself, so
+ * a client not reading its responses only stalls its own connection: once it owes that many
+ * responses, no further frame is read from it. A request the executor rejects is answered with
+ * {@link ChannelResponse#BUSY} right away.
+ * <p>
+ * Connections beyond {@code channel.max-connections} are closed as soon as they are accepted. A
+ * connection is closed when a frame exceeds {@code channel.max-frame-length}, when a started frame does
+ * not arrive within the read timeout, or when it stays silent for that long with no request in flight.
+ */
+public class ChannelServer implements Closeable {
+
+    public interface Handler {
+        ChannelResponse handle(ChannelRequest request);
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(ChannelServer.class);
+
+    private final Executor executor;
+    private final Handler handler;
+    private final int maxFrameLength;
+    private final int maxConnections;
+    private final int maxInFlight;
+    private final int readTimeoutMillis;
+    private final ServerSocket serverSocket;
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger connectionIds = new AtomicInteger();
+    private final Thread acceptor;
+
+    public ChannelServer(ChannelProperties properties, Executor executor, Handler handler) throws IOException {
+        this.executor = executor;
+        this.handler = handler;
+        this.maxFrameLength = properties.getMaxFrameLength();
+        this.maxConnections = properties.getMaxConnections();
+        this.maxInFlight = Math.max(1, properties.getMaxInFlight());
+        this.readTimeoutMillis = properties.getReadTimeoutMs();
+        this.serverSocket = new ServerSocket(properties.getPort(), 0, InetAddress.getByName(properties.getAddress()));
+        this.acceptor = new Thread(this::accept, "channel-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        connections.forEach(Connection::close);
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                if (connections.size() >= maxConnections) {
+                    logger.warn("Refusing channel connection from {}: {} connections open",
+                            socket.getRemoteSocketAddress(), connections.size());
+                    socket.close();
+                    continue;
+                }
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(readTimeoutMillis);
+                Connection connection = new Connection(socket, connectionIds.incrementAndGet());
+                connections.add(connection);
+                connection.start();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    logger.warn("Cannot accept channel connection: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for the first byte of the next frame, through read timeouts while responses are still owed.
+     *
+     * @return false when the connection ended or stayed idle for the read timeout
+     */
+    private boolean awaitFrame(BufferedInputStream in, AtomicInteger inFlight) throws IOException {
+        while (true) {
+            in.mark(1);
+            try {
+                if (in.read() < 0) {
+                    return false;
+                }
+                in.reset();
+                return true;
+            } catch (SocketTimeoutException e) {
+                if (inFlight.get() == 0) {
+                    logger.debug("Closing idle channel connection");
+                    return false;
+                }
+            }
+        }
+    }
+
+    /**
+     * One client connection with its reader and writer threads.
+     */
+    private final class Connection {
+        private final Socket socket;
+        private final Thread reader;
+        private final Thread writer;
+        /**
+         * Requests read but not answered yet, down to the socket buffer.
+         */
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final Semaphore permits = new Semaphore(maxInFlight);
+        private final BlockingQueue<ChannelResponse> responses = new LinkedBlockingQueue<>();
+
+        Connection(Socket socket, int id) {
+            this.socket = socket;
+            this.reader = new Thread(this::read, "channel-" + id);
+            this.writer = new Thread(this::write, "channel-" + id + "-writer");
+            reader.setDaemon(true);
+            writer.setDaemon(true);
+        }
+
+        void start() {
+            writer.start();
+            reader.start();
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                logger.debug("Cannot close channel connection: {}", e.getMessage());
+            }
+            reader.interrupt();
+            writer.interrupt();
+        }
+
+        private void read() {
+            logger.debug("Channel connection from {}", socket.getRemoteSocketAddress());
+            try {
+                BufferedInputStream buffered = new BufferedInputStream(socket.getInputStream());
+                DataInputStream in = new DataInputStream(buffered);
+                while (true) {
+                    // a client not reading its responses is not read from either
+                    permits.acquire();
+                    if (!awaitFrame(buffered, inFlight)) {
+                        break;
+                    }
+                    ChannelRequest request = ChannelRequest.readFrom(in, maxFrameLength);
+                    inFlight.incrementAndGet();
+                    try {
+                        executor.execute(() -> responses.add(handle(request)));
+                    } catch (RejectedExecutionException e) {
+                        responses.add(ChannelResponse.failed(request.getRequestId(), ChannelResponse.BUSY,
+                                e.getMessage()));
+                    }
+                }
+            } catch (EOFException | SocketException | InterruptedException e) {
+                logger.debug("Channel connection from {} closed", socket.getRemoteSocketAddress());
+            } catch (SocketTimeoutException e) {
+                logger.warn("Closing channel connection from {}: frame not received within {} ms",
+                        socket.getRemoteSocketAddress(), readTimeoutMillis);
+            } catch (IOException e) {
+                logger.warn("Closing channel connection from {}: {}", socket.getRemoteSocketAddress(),
+                        e.getMessage());
+            } finally {
+                connections.remove(this);
+                close();
+            }
+        }
+
+        private ChannelResponse handle(ChannelRequest request) {
+            try {
+                return handler.handle(request);
+            } catch (RuntimeException e) {
+                logger.error("Channel request " + request.getRequestId() + " failed", e);
+                return ChannelResponse.failed(request.getRequestId(), ChannelResponse.ERROR, e.getMessage());
+            }
+        }
+
+        /**
+         * Writes responses as they come, flushing once no other is waiting.
+         */
+        private void write() {
+            try {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                while (true) {
+                    ChannelResponse response = responses.take();
+                    try {
+                        response.writeTo(out);
+                    } catch (IllegalArgumentException e) {
+                        ChannelResponse.failed(response.getRequestId(), ChannelResponse.ERROR, e.getMessage())
+                                .writeTo(out);
+                    }
+                    if (responses.isEmpty()) {
+                        out.flush();
+                    }
+                    inFlight.decrementAndGet();
+                    permits.release();
+                }
+            } catch (InterruptedException e) {
+                logger.debug("Channel writer of {} stopped", socket.getRemoteSocketAddress());
+            } catch (IOException e) {
+                logger.debug("Cannot answer channel connection {}: {}", socket.getRemoteSocketAddress(),
+                        e.getMessage());
+                close();
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package greeting.robot.server.channel;
+
+import greeting.robot.data.api.ChannelRequest;
+import greeting.robot.data.api.ChannelResponse;
+import greeting.robot.data.api.Result;
+import greeting.robot.server.AnalyserBusyException;
+import greeting.robot.server.DecodedImage;
+import greeting.robot.server.FaceRegion;
+import greeting.robot.server.GalleryLoadingException;
+import greeting.robot.server.ImageDecoder;
+import greeting.robot.server.RawImages;
+import greeting.robot.server.RecognitionService;
+import greeting.robot.server.UploadExecutor;
+import greeting.robot.server.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Serves identification over a persistent {@link ChannelServer} on {@code channel.address} and
+ * {@code channel.port}, next to the HTTP endpoints and sharing their {@link UploadExecutor}.
+ */
+@Component
+public class RecognitionChannel {
+    private final Logger logger = LoggerFactory.getLogger(RecognitionChannel.class);
+
+    @Autowired
+    private ChannelProperties channelProperties;
+
+    @Autowired
+    private RecognitionService recognitionService;
+
+    @Autowired
+    private ImageDecoder imageDecoder;
+
+    @Autowired
+    private UploadExecutor uploadExecutor;
+
+    @Autowired
+    private MetricsRegistry metricsRegistry;
+
+    private ChannelServer server;
+    private LongAdder requests;
+
+    @PostConstruct
+    public void postConstruct() throws IOException {
+        if (!channelProperties.isEnabled()) {
+            return;
+        }
+        requests = metricsRegistry.counter("channel_requests_total");
+        server = new ChannelServer(channelProperties, uploadExecutor, this::handle);
+        metricsRegistry.gauge("channel_connections", server::getConnectionCount);
+        logger.info("Recognition channel listening on {}:{}", channelProperties.getAddress(), server.getPort());
+    }
+
+    @PreDestroy
+    public void preDestroy() throws IOException {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    private ChannelResponse handle(ChannelRequest request) {
+        requests.increment();
+        try {
+            DecodedImage decodedImage = request.getFormat() == ChannelRequest.RAW
+                    ? DecodedImage.of(RawImages.wrap(request.getImage(), request.getWidth(), request.getHeight(),
+                    request.getChannels()))
+                    : imageDecoder.decode(request.getImage());
+            FaceRegion faceRegion = new FaceRegion();
+            faceRegion.setCrop(request.isCrop());
+            if (request.getFaceWidth() > 0) {
+                faceRegion.setFaceX(request.getFaceX());
+                faceRegion.setFaceY(request.getFaceY());
+                faceRegion.setFaceWidth(request.getFaceWidth());
+                faceRegion.setFaceHeight(request.getFaceHeight());
+            }
+            Float minQuality = Float.isNaN(request.getMinQuality()) ? null : request.getMinQuality();
+
+            Optional<List<Result>> results = recognitionService.identify(request.getGallery(), decodedImage,
+                    faceRegion, request.getK(), minQuality);
+            return results.map(found -> ChannelResponse.ok(request.getRequestId(), found))
+                    .orElseGet(() -> ChannelResponse.failed(request.getRequestId(), ChannelResponse.ERROR,
+                            RecognitionService.NO_FACES));
+        } catch (AnalyserBusyException | GalleryLoadingException e) {
+            logger.warn("Rejecting channel request: {}", e.getMessage());
+            return ChannelResponse.failed(request.getRequestId(), ChannelResponse.BUSY, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ChannelResponse.failed(request.getRequestId(), ChannelResponse.ERROR, "Interrupted");
+        } catch (Exception e) {
+            logger.error("Channel request " + request.getRequestId() + " failed", e);
+            return ChannelResponse.failed(request.getRequestId(), ChannelResponse.ERROR, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package greeting.robot.server.engine;
+
+import pl.edu.agh.biowiz.model.detected.ImageRectangle;
+import pl.edu.agh.biowiz.model.detected.PwDetectedFace;
+import pl.edu.agh.biowiz.model.profile.CreateDescriptorResult;
+import pl.edu.agh.biowiz.model.profile.PwFaceDescriptor;
+
+import java.awt.image.BufferedImage;
+import java.util.Optional;
+
+/**
+ * Face detection and description backend used by {@link greeting.robot.server.AnalyserService}.
+ * An instance is only ever used by one thread at a time.
+ */
+public interface FaceAnalysisEngine {
+
+    void initialize();
+
+    void free();
+
+    Optional<PwDetectedFace> detectFaceInRectangle(BufferedImage image, ImageRectangle rectangle);
+
+    CreateDescriptorResult<PwFaceDescriptor> createDescriptor(PwDetectedFace detectedFace, BufferedImage image);
+
+    float compareDescriptors(PwFaceDescriptor first, PwFaceDescriptor second);
+}
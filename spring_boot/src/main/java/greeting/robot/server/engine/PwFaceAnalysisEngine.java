@@ -0,0 +1,48 @@
+package greeting.robot.server.engine;
+
+import pl.edu.agh.biowiz.face.lib.pw.PwFaceAnalysisLib;
+import pl.edu.agh.biowiz.model.detected.ImageRectangle;
+import pl.edu.agh.biowiz.model.detected.PwDetectedFace;
+import pl.edu.agh.biowiz.model.profile.CreateDescriptorResult;
+import pl.edu.agh.biowiz.model.profile.PwFaceDescriptor;
+
+import java.awt.image.BufferedImage;
+import java.util.Optional;
+
+/**
+ * Engine backed by the native PW face analysis library.
+ */
+public class PwFaceAnalysisEngine implements FaceAnalysisEngine {
+    private final PwFaceAnalysisLib analyser = new PwFaceAnalysisLib();
+    private final boolean useGpu;
+
+    public PwFaceAnalysisEngine(boolean useGpu) {
+        this.useGpu = useGpu;
+    }
+
+    @Override
+    public void initialize() {
+        System.setProperty("useGpu", Boolean.toString(useGpu));
+        analyser.initialize();
+    }
+
+    @Override
+    public void free() {
+        analyser.free();
+    }
+
+    @Override
+    public Optional<PwDetectedFace> detectFaceInRectangle(BufferedImage image, ImageRectangle rectangle) {
+        return analyser.detectFaceInRectangle(image, rectangle);
+    }
+
+    @Override
+    public CreateDescriptorResult<PwFaceDescriptor> createDescriptor(PwDetectedFace detectedFace, BufferedImage image) {
+        return analyser.createDescriptor(detectedFace, image);
+    }
+
+    @Override
+    public float compareDescriptors(PwFaceDescriptor first, PwFaceDescriptor second) {
+        return analyser.compareDescriptors(first, second);
+    }
+}
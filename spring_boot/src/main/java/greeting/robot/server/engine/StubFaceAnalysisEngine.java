@@ -0,0 +1,85 @@
+package greeting.robot.server.engine;
+
+import greeting.robot.server.gallery.SimilarityMetric;
+import pl.edu.agh.biowiz.model.detected.ImageRectangle;
+import pl.edu.agh.biowiz.model.detected.PwDetectedFace;
+import pl.edu.agh.biowiz.model.profile.CreateDescriptorResult;
+import pl.edu.agh.biowiz.model.profile.PwFaceDescriptor;
+
+import java.awt.image.BufferedImage;
+import java.util.Optional;
+import java.util.function.IntSupplier;
+
+/**
+ * Deterministic pure-Java engine for load tests and profiling on machines without the native
+ * library. It "finds" a face in the middle of the searched rectangle and describes it with a
+ * fixed-length vector sampled from the pixels, so equal images always get equal descriptors.
+ * Detection and description burn a configurable amount of CPU time to mimic the native cost.
+ * The vector length can follow the loaded gallery, so any project can be searched with stub descriptors.
+ */
+public class StubFaceAnalysisEngine implements FaceAnalysisEngine {
+    private final IntSupplier dimension;
+    private final long detectCostNanos;
+    private final long describeCostNanos;
+
+    public StubFaceAnalysisEngine(int dimension, long detectCostMicros, long describeCostMicros) {
+        this(() -> dimension, detectCostMicros, describeCostMicros);
+    }
+
+    /**
+     * @param dimension asked for the vector length of every descriptor
+     */
+    public StubFaceAnalysisEngine(IntSupplier dimension, long detectCostMicros, long describeCostMicros) {
+        this.dimension = dimension;
+        this.detectCostNanos = detectCostMicros * 1000;
+        this.describeCostNanos = describeCostMicros * 1000;
+    }
+
+    @Override
+    public void initialize() {
+    }
+
+    @Override
+    public void free() {
+    }
+
+    @Override
+    public Optional<PwDetectedFace> detectFaceInRectangle(BufferedImage image, ImageRectangle rectangle) {
+        burn(detectCostNanos);
+        int width = rectangle.getWidth() * 3 / 5;
+        int height = rectangle.getHeight() * 3 / 5;
+        if (width == 0 || height == 0) {
+            return Optional.empty();
+        }
+        return Optional.of(new PwDetectedFace(rectangle.getX() + (rectangle.getWidth() - width) / 2,
+                rectangle.getY() + (rectangle.getHeight() - height) / 2, width, height));
+    }
+
+    @Override
+    public CreateDescriptorResult<PwFaceDescriptor> createDescriptor(PwDetectedFace detectedFace, BufferedImage image) {
+        burn(describeCostNanos);
+        int dimension = this.dimension.getAsInt();
+        int grid = (int) Math.ceil(Math.sqrt(dimension));
+        float[] descriptor = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            int x = detectedFace.getX() + (i % grid) * detectedFace.getWidth() / grid;
+            int y = detectedFace.getY() + (i / grid) * detectedFace.getHeight() / grid;
+            int rgb = image.getRGB(Math.min(x, image.getWidth() - 1), Math.min(y, image.getHeight() - 1));
+            int gray = ((rgb >> 16 & 0xff) + (rgb >> 8 & 0xff) + (rgb & 0xff)) / 3;
+            descriptor[i] = gray / 255f - 0.5f;
+        }
+        return new CreateDescriptorResult<>(new PwFaceDescriptor(descriptor, 1));
+    }
+
+    @Override
+    public float compareDescriptors(PwFaceDescriptor first, PwFaceDescriptor second) {
+        return SimilarityMetric.COSINE.score(first.getDescriptor(), second.getDescriptor());
+    }
+
+    private static void burn(long nanos) {
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) {
+            // busy wait on purpose, the native library keeps its thread busy as well
+        }
+    }
+}
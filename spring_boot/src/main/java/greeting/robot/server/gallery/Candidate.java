@@ -0,0 +1,31 @@
+package greeting.robot.server.gallery;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Gallery row together with its score, used while walking an index.
+ */
+final class Candidate {
+    static final Comparator<Candidate> WORST_FIRST = (a, b) -> Float.compare(a.score, b.score);
+    static final Comparator<Candidate> BEST_FIRST = WORST_FIRST.reversed();
+
+    final int row;
+    final float score;
+
+    Candidate(int row, float score) {
+        this.row = row;
+        this.score = score;
+    }
+
+    /**
+     * Drains a worst-first queue into an array of rows, best first.
+     */
+    static int[] rowsBestFirst(PriorityQueue<Candidate> worstFirst) {
+        int[] rows = new int[worstFirst.size()];
+        for (int i = rows.length - 1; i >= 0; i--) {
+            rows[i] = worstFirst.poll().row;
+        }
+        return rows;
+    }
+}
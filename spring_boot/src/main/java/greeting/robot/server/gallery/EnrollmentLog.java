@@ -0,0 +1,235 @@
+package greeting.robot.server.gallery;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Append-only binary log of descriptors enrolled through {@code /createDescriptor} into one gallery.
+ * <p>
+ * {@code descriptors.bin} starts with a 16 byte header (magic, version, dimension, reserved)
+ * followed by fixed-size records: subject id (two longs), offset of the subject's name in
+ * {@code names.bin} (long) and the descriptor floats. {@code names.bin} holds every distinct name
+ * once, as a length-prefixed UTF-8 string. Reading maps the log window by window and copies the
+ * floats in bulk, so only one object per subject is created no matter how many records there are.
+ * A torn record at the end of the log, left by a crash during an append, is ignored.
+ */
+public class EnrollmentLog implements Closeable {
+    private static final int MAGIC = 0x4752454e;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_PREFIX = 24;
+    private static final int MAX_WINDOW = 64 << 20;
+
+    private final Logger logger = LoggerFactory.getLogger(EnrollmentLog.class);
+
+    private final Path descriptorsPath;
+    private final Path namesPath;
+    private final FileChannel descriptors;
+    private final FileChannel names;
+    private final Map<String, Long> nameOffsets = new HashMap<>();
+    private int dimension;
+    private long namesLength;
+
+    /**
+     * Opens the log in {@code directory}, creating it when there is none yet.
+     */
+    public EnrollmentLog(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        descriptorsPath = directory.resolve("descriptors.bin");
+        namesPath = directory.resolve("names.bin");
+        descriptors = FileChannel.open(descriptorsPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        names = FileChannel.open(namesPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+
+        try {
+            if (descriptors.size() >= HEADER_SIZE) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                descriptors.read(header, 0);
+                header.flip();
+                if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                    throw new IllegalStateException(descriptorsPath + " is not an enrollment log");
+                }
+                dimension = header.getInt();
+                descriptors.truncate(HEADER_SIZE + recordCount() * recordSize());
+            }
+            readNames().forEach((offset, name) -> nameOffsets.put(name, offset));
+            names.truncate(namesLength);
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        descriptors.close();
+        names.close();
+    }
+
+    /**
+     * Appends one descriptor of {@code name}. Subjects are identified by a UUID derived from
+     * the name, so repeated enrollments of the same person share a subject; a project subject of
+     * the same name is joined through {@link Gallery#adoptSubjectIds} when the gallery is built.
+     */
+    public synchronized UUID append(String name, float[] descriptor) throws IOException {
+        if (dimension == 0) {
+            dimension = descriptor.length;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(dimension).putInt(0).flip();
+            writeFully(descriptors, header, 0);
+        } else if (descriptor.length != dimension) {
+            throw new IllegalArgumentException("Descriptor of length " + descriptor.length
+                    + " does not match enrollment log dimension " + dimension);
+        }
+
+        Long nameOffset = nameOffsets.get(name);
+        if (nameOffset == null) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            nameOffset = names.size();
+            ByteBuffer entry = ByteBuffer.allocate(4 + bytes.length);
+            entry.putInt(bytes.length).put(bytes).flip();
+            writeFully(names, entry, nameOffset);
+            names.force(false);
+            nameOffsets.put(name, nameOffset);
+        }
+
+        UUID subjectId = subjectId(name);
+        ByteBuffer record = ByteBuffer.allocate(recordSize());
+        record.putLong(subjectId.getMostSignificantBits())
+                .putLong(subjectId.getLeastSignificantBits())
+                .putLong(nameOffset);
+        record.asFloatBuffer().put(descriptor);
+        record.clear();
+        writeFully(descriptors, record, HEADER_SIZE + recordCount() * recordSize());
+        descriptors.force(false);
+        return subjectId;
+    }
+
+    /**
+     * Maps the log and packs every record into a gallery.
+     *
+     * @throws ArithmeticException when the records do not fit into one float array
+     */
+    public synchronized Gallery read() throws IOException {
+        long count = recordCount();
+        if (count == 0) {
+            return Gallery.of(0, new float[0], new int[0], SubjectTable.empty());
+        }
+        // sorted offsets let a record find its name without boxing; consecutive records of one
+        // subject skip even the search
+        Map<Long, String> namesByOffset = readNames();
+        long[] nameOffsets = new long[namesByOffset.size()];
+        String[] nameAt = new String[nameOffsets.length];
+        int nameCount = 0;
+        for (Map.Entry<Long, String> name : new TreeMap<>(namesByOffset).entrySet()) {
+            nameOffsets[nameCount] = name.getKey();
+            nameAt[nameCount++] = name.getValue();
+        }
+        int[] subjectByName = new int[nameCount];
+        Arrays.fill(subjectByName, -1);
+        List<UUID> subjectIds = new ArrayList<>();
+        List<String> subjectNames = new ArrayList<>();
+
+        float[] vectors = new float[Math.toIntExact(count * dimension)];
+        int[] subjectIndices = new int[(int) count];
+        long previousOffset = -1;
+        int subject = -1;
+        // a mapping cannot exceed 2 GB, so large logs are read in windows of whole records
+        int windowRecords = Math.max(1, MAX_WINDOW / recordSize());
+        for (int first = 0; first < count; first += windowRecords) {
+            int records = (int) Math.min(windowRecords, count - first);
+            MappedByteBuffer mapped = descriptors.map(FileChannel.MapMode.READ_ONLY,
+                    HEADER_SIZE + (long) first * recordSize(), (long) records * recordSize());
+            // records are a whole number of floats long, so one view serves the whole window
+            FloatBuffer floats = mapped.asFloatBuffer();
+            for (int i = 0; i < records; i++) {
+                int row = first + i;
+                int position = i * recordSize();
+                long nameOffset = mapped.getLong(position + 16);
+                if (nameOffset != previousOffset) {
+                    int name = Arrays.binarySearch(nameOffsets, 0, nameCount, nameOffset);
+                    if (name < 0) {
+                        throw new IllegalStateException("Record " + row + " of " + descriptorsPath
+                                + " refers to no name in " + namesPath);
+                    }
+                    if (subjectByName[name] < 0) {
+                        subjectByName[name] = subjectIds.size();
+                        subjectIds.add(new UUID(mapped.getLong(position), mapped.getLong(position + 8)));
+                        subjectNames.add(nameAt[name]);
+                    }
+                    subject = subjectByName[name];
+                    previousOffset = nameOffset;
+                }
+                subjectIndices[row] = subject;
+                floats.position((position + RECORD_PREFIX) / Float.BYTES);
+                floats.get(vectors, row * dimension, dimension);
+            }
+        }
+        SubjectTable subjects = new SubjectTable(subjectIds.toArray(new UUID[0]),
+                subjectNames.toArray(new String[0]));
+        return Gallery.of(dimension, vectors, subjectIndices, subjects);
+    }
+
+    public static UUID subjectId(String name) {
+        return UUID.nameUUIDFromBytes(("enrolled:" + name).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads every complete name, remembering where the last one ends.
+     */
+    private Map<Long, String> readNames() throws IOException {
+        Map<Long, String> result = new HashMap<>();
+        long size = names.size();
+        namesLength = 0;
+        if (size == 0) {
+            return result;
+        }
+        MappedByteBuffer mapped = names.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        while (mapped.remaining() >= 4) {
+            long offset = mapped.position();
+            int length = mapped.getInt();
+            if (length > mapped.remaining()) {
+                logger.warn("Ignoring torn name at offset {} of {}", offset, namesPath);
+                break;
+            }
+            byte[] bytes = new byte[length];
+            mapped.get(bytes);
+            result.put(offset, new String(bytes, StandardCharsets.UTF_8));
+            namesLength = mapped.position();
+        }
+        return result;
+    }
+
+    private long recordCount() throws IOException {
+        return dimension == 0 ? 0 : (descriptors.size() - HEADER_SIZE) / recordSize();
+    }
+
+    private int recordSize() {
+        return RECORD_PREFIX + 4 * dimension;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package greeting.robot.server.gallery;
+
+import pl.edu.agh.biowiz.model.mark.FaceMark;
+import pl.edu.agh.biowiz.model.profile.PwFaceDescriptor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Immutable copy of the matching-relevant part of a project. Descriptors of all face marks
+ * are packed row by row into one float array, with the subject of every row kept in a parallel
+ * int array, so that a whole gallery can be scored without touching the project object graph.
+ * A matcher that only searches quantised rows keeps a copy {@link #withoutVectors() without} the
+ * descriptors, which then only answers for the subjects of its rows.
+ */
+public final class Gallery implements Scannable {
+    private final int dimension;
+    private final int size;
+    private final float[] vectors;
+    private final int[] subjectIndices;
+    private final SubjectTable subjects;
+
+    private Gallery(int dimension, int size, float[] vectors, int[] subjectIndices, SubjectTable subjects) {
+        this.dimension = dimension;
+        this.size = size;
+        this.vectors = vectors;
+        this.subjectIndices = subjectIndices;
+        this.subjects = subjects;
+    }
+
+    /**
+     * Marks without a descriptor or with an unknown subject are skipped, as they could never be matched.
+     */
+    public static Gallery of(List<FaceMark> faceMarks, SubjectTable subjects) {
+        List<float[]> rows = new ArrayList<>(faceMarks.size());
+        List<Integer> rowSubjects = new ArrayList<>(faceMarks.size());
+        for (FaceMark mark : faceMarks) {
+            Optional<PwFaceDescriptor> descriptor = mark.getPwFaceData().getDescriptor();
+            int subjectIndex = subjects.indexOf(mark.getSubjectId());
+            if (descriptor.isPresent() && subjectIndex >= 0) {
+                rows.add(descriptor.get().getDescriptor());
+                rowSubjects.add(subjectIndex);
+            }
+        }
+
+        int dimension = rows.isEmpty() ? 0 : rows.get(0).length;
+        float[] vectors = new float[rows.size() * dimension];
+        int[] subjectIndices = new int[rows.size()];
+        for (int row = 0; row < rows.size(); row++) {
+            float[] descriptor = rows.get(row);
+            if (descriptor.length != dimension) {
+                throw new IllegalStateException("Descriptor of length " + descriptor.length
+                        + " does not match gallery dimension " + dimension);
+            }
+            System.arraycopy(descriptor, 0, vectors, row * dimension, dimension);
+            subjectIndices[row] = rowSubjects.get(row);
+        }
+        return new Gallery(dimension, rows.size(), vectors, subjectIndices, subjects);
+    }
+
+    /**
+     * Wraps already packed rows, {@code vectors} must hold {@code subjectIndices.length} rows.
+     */
+    public static Gallery of(int dimension, float[] vectors, int[] subjectIndices, SubjectTable subjects) {
+        if (vectors.length != subjectIndices.length * dimension) {
+            throw new IllegalArgumentException("Expected " + subjectIndices.length * dimension
+                    + " floats, got " + vectors.length);
+        }
+        return new Gallery(dimension, subjectIndices.length, vectors, subjectIndices, subjects);
+    }
+
+    /**
+     * Gallery holding the rows of this one followed by the rows of {@code other}.
+     * Subjects present in both, by id, are merged.
+     */
+    public Gallery concat(Gallery other) {
+        if (other.size == 0) {
+            return this;
+        }
+        if (size == 0) {
+            return other;
+        }
+        if (other.dimension != dimension) {
+            throw new IllegalStateException("Cannot merge galleries of dimension " + dimension
+                    + " and " + other.dimension);
+        }
+        SubjectTable merged = subjects.merge(other.subjects);
+        float[] mergedVectors = Arrays.copyOf(vectors, vectors.length + other.vectors.length);
+        System.arraycopy(other.vectors, 0, mergedVectors, vectors.length, other.vectors.length);
+        int[] mergedSubjects = Arrays.copyOf(subjectIndices, size + other.size);
+        for (int row = 0; row < other.size; row++) {
+            mergedSubjects[size + row] = merged.indexOf(other.subjects.id(other.subjectIndices[row]));
+        }
+        return new Gallery(dimension, size + other.size, mergedVectors, mergedSubjects, merged);
+    }
+
+    /**
+     * Same rows with the subjects named like one of {@code known} taking its id, see
+     * {@link SubjectTable#adoptIds}; enrolled descriptors of a project subject thus merge with it.
+     */
+    public Gallery adoptSubjectIds(SubjectTable known) {
+        return new Gallery(dimension, size, vectors, subjectIndices, subjects.adoptIds(known));
+    }
+
+    /**
+     * Gallery of rows {@code [from, to)} of this one, sharing its subject table.
+     */
+    public Gallery rows(int from, int to) {
+        return new Gallery(dimension, to - from, Arrays.copyOfRange(vectors, from * dimension, to * dimension),
+                Arrays.copyOfRange(subjectIndices, from, to), subjects);
+    }
+
+    /**
+     * Copy holding the subjects of the rows only, see {@link #hasVectors()}.
+     */
+    Gallery withoutVectors() {
+        return new Gallery(dimension, size, null, subjectIndices, subjects);
+    }
+
+    /**
+     * Copy with the same subjects and {@code vectors} as rows, e.g. the dequantised ones.
+     */
+    Gallery withVectors(float[] vectors) {
+        return of(dimension, vectors, subjectIndices, subjects);
+    }
+
+    /**
+     * Whether the descriptors are kept; all scoring and row access needs them.
+     */
+    public boolean hasVectors() {
+        return vectors != null;
+    }
+
+    /**
+     * Bulk kernel: writes the similarity of {@code query} to every row into {@code scores}.
+     */
+    public void score(float[] query, SimilarityMetric metric, float[] scores) {
+        if (query.length != dimension) {
+            throw new IllegalArgumentException("Query of length " + query.length
+                    + " does not match gallery dimension " + dimension);
+        }
+        for (int row = 0, offset = 0; row < size; row++, offset += dimension) {
+            scores[row] = metric.score(query, 0, vectors, offset, dimension);
+        }
+    }
+
+    @Override
+    public void scan(float[] query, SimilarityMetric metric, int from, int to, TopK top) {
+        if (size > 0 && query.length != dimension) {
+            throw new IllegalArgumentException("Query of length " + query.length
+                    + " does not match gallery dimension " + dimension);
+        }
+        for (int row = from, offset = from * dimension; row < to; row++, offset += dimension) {
+            top.offer(row, metric.score(query, 0, vectors, offset, dimension));
+        }
+    }
+
+    public float score(float[] query, int row, SimilarityMetric metric) {
+        return metric.score(query, 0, vectors, row * dimension, dimension);
+    }
+
+    /**
+     * Similarity between two rows of this gallery.
+     */
+    float score(int first, int second, SimilarityMetric metric) {
+        return metric.score(vectors, first * dimension, vectors, second * dimension, dimension);
+    }
+
+    float[] vectors() {
+        return vectors;
+    }
+
+    public float[] row(int row) {
+        return Arrays.copyOfRange(vectors, row * dimension, (row + 1) * dimension);
+    }
+
+    public String getSubjectName(int row) {
+        return subjects.name(subjectIndices[row]);
+    }
+
+    public int getSubjectIndex(int row) {
+        return subjectIndices[row];
+    }
+
+    public SubjectTable getSubjects() {
+        return subjects;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Estimated heap taken by the rows and the subject table.
+     */
+    public long sizeInBytes() {
+        long vectorBytes = vectors != null ? 4L * vectors.length : 0;
+        return vectorBytes + 4L * subjectIndices.length + subjects.sizeInBytes();
+    }
+}
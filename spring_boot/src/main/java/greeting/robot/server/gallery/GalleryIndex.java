@@ -0,0 +1,18 @@
+package greeting.robot.server.gallery;
+
+/**
+ * Approximate lookup structure built over a {@link Gallery}.
+ */
+public interface GalleryIndex {
+
+    /**
+     * Returns up to {@code count} rows of the gallery most similar to {@code query}, best first.
+     * Scores are not returned on purpose, callers rescore the candidates against the gallery.
+     */
+    int[] search(float[] query, int count);
+
+    /**
+     * Estimated heap taken by the index itself, not counting the gallery it was built over.
+     */
+    long sizeInBytes();
+}
@@ -0,0 +1,369 @@
+package greeting.robot.server.gallery;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Matching settings bound from the {@code gallery.*} keys of application.properties.
+ */
+@Component
+@ConfigurationProperties(prefix = "gallery")
+public class GalleryProperties {
+
+    public enum IndexType {
+        EXACT, HNSW, IVF
+    }
+
+    public enum Quantization {
+        NONE(null), INT8(QuantizedGallery.Mode.INT8), FLOAT16(QuantizedGallery.Mode.FLOAT16);
+
+        private final QuantizedGallery.Mode mode;
+
+        Quantization(QuantizedGallery.Mode mode) {
+            this.mode = mode;
+        }
+    }
+
+    /**
+     * Either a {@link SimilarityMetric} name or "auto" to pick the one agreeing with the native library.
+     */
+    private String metric = "auto";
+    private IndexType index = IndexType.EXACT;
+    /**
+     * Number of approximate candidates rescored exactly before the final ranking.
+     */
+    private int rescore = 32;
+    /**
+     * Largest number of matches a request may ask for; every scan shard allocates room for that many.
+     */
+    private int maxK = 100;
+    /**
+     * Storage scanned by the exact search, NONE for full precision.
+     */
+    private Quantization quantization = Quantization.NONE;
+    /**
+     * Number of best quantised candidates re-ranked in full precision, 0 to trust quantised scores.
+     */
+    private int rerank = 32;
+    /**
+     * Directory holding one {@code <gallery>/project.biow} project per gallery.
+     */
+    private String projectsPath = ".biowiz-data";
+    /**
+     * Gallery of requests not naming one, loaded at startup.
+     */
+    private String defaultGallery = "exampleCelebrites";
+    /**
+     * Directory of the binary logs of descriptors enrolled through /createDescriptor, one subdirectory
+     * per gallery.
+     */
+    private String enrollmentPath = "enrollments";
+    /**
+     * Directory of binary snapshots of the project galleries, {@code <gallery>.snapshot} loaded instead
+     * of the project while it is up to date.
+     */
+    private String snapshotPath = "gallery-snapshots";
+    /**
+     * Number of live enrollments after which they are merged into the indexed gallery.
+     */
+    private int compactThreshold = 1000;
+    private final SubjectFilter subjectFilter = new SubjectFilter();
+    /**
+     * Threads of the exhaustive scan pool, number of processors when not positive.
+     */
+    private int parallelism = 0;
+    /**
+     * Galleries smaller than this are scanned on the request thread.
+     */
+    private int parallelThreshold = 20000;
+    private int shardSize = 5000;
+    private final Hnsw hnsw = new Hnsw();
+    private final Ivf ivf = new Ivf();
+    private final Cache cache = new Cache();
+    private final Reload reload = new Reload();
+
+    public String getMetric() {
+        return metric;
+    }
+
+    public void setMetric(String metric) {
+        this.metric = metric;
+    }
+
+    public IndexType getIndex() {
+        return index;
+    }
+
+    public void setIndex(IndexType index) {
+        this.index = index;
+    }
+
+    public int getMaxK() {
+        return maxK;
+    }
+
+    public void setMaxK(int maxK) {
+        this.maxK = maxK;
+    }
+
+    public int getRescore() {
+        return rescore;
+    }
+
+    public void setRescore(int rescore) {
+        this.rescore = rescore;
+    }
+
+    public Quantization getQuantization() {
+        return quantization;
+    }
+
+    public void setQuantization(Quantization quantization) {
+        this.quantization = quantization;
+    }
+
+    /**
+     * @return null when the gallery is scanned in full precision
+     */
+    public QuantizedGallery.Mode getQuantizationMode() {
+        return quantization.mode;
+    }
+
+    public int getRerank() {
+        return rerank;
+    }
+
+    public void setRerank(int rerank) {
+        this.rerank = rerank;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    public int getShardSize() {
+        return shardSize;
+    }
+
+    public void setShardSize(int shardSize) {
+        this.shardSize = shardSize;
+    }
+
+    public String getProjectsPath() {
+        return projectsPath;
+    }
+
+    public void setProjectsPath(String projectsPath) {
+        this.projectsPath = projectsPath;
+    }
+
+    public String getDefaultGallery() {
+        return defaultGallery;
+    }
+
+    public void setDefaultGallery(String defaultGallery) {
+        this.defaultGallery = defaultGallery;
+    }
+
+    public String getEnrollmentPath() {
+        return enrollmentPath;
+    }
+
+    public void setEnrollmentPath(String enrollmentPath) {
+        this.enrollmentPath = enrollmentPath;
+    }
+
+    public String getSnapshotPath() {
+        return snapshotPath;
+    }
+
+    public void setSnapshotPath(String snapshotPath) {
+        this.snapshotPath = snapshotPath;
+    }
+
+    public int getCompactThreshold() {
+        return compactThreshold;
+    }
+
+    public void setCompactThreshold(int compactThreshold) {
+        this.compactThreshold = compactThreshold;
+    }
+
+    public SubjectFilter getSubjectFilter() {
+        return subjectFilter;
+    }
+
+    public Hnsw getHnsw() {
+        return hnsw;
+    }
+
+    public Ivf getIvf() {
+        return ivf;
+    }
+
+    public Cache getCache() {
+        return cache;
+    }
+
+    public Reload getReload() {
+        return reload;
+    }
+
+    public GalleryIndex createIndex(Gallery gallery, SimilarityMetric similarityMetric) {
+        switch (index) {
+            case HNSW:
+                return new HnswIndex(gallery, similarityMetric, hnsw.getM(), hnsw.getEfConstruction(), hnsw.getEfSearch());
+            case IVF:
+                return new IvfIndex(gallery, similarityMetric, ivf.getLists(), ivf.getProbes(), ivf.getIterations());
+            default:
+                throw new IllegalStateException("No approximate index for " + index);
+        }
+    }
+
+    /**
+     * Scores subject centroids before individual marks and returns one match per subject.
+     */
+    public static class SubjectFilter {
+        private boolean enabled = false;
+        /**
+         * Number of best subjects by centroid whose marks are scored, never fewer than requested matches.
+         */
+        private int expand = 10;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getExpand() {
+            return expand;
+        }
+
+        public void setExpand(int expand) {
+            this.expand = expand;
+        }
+    }
+
+    public static class Hnsw {
+        private int m = 16;
+        private int efConstruction = 100;
+        private int efSearch = 64;
+
+        public int getM() {
+            return m;
+        }
+
+        public void setM(int m) {
+            this.m = m;
+        }
+
+        public int getEfConstruction() {
+            return efConstruction;
+        }
+
+        public void setEfConstruction(int efConstruction) {
+            this.efConstruction = efConstruction;
+        }
+
+        public int getEfSearch() {
+            return efSearch;
+        }
+
+        public void setEfSearch(int efSearch) {
+            this.efSearch = efSearch;
+        }
+    }
+
+    public static class Ivf {
+        /**
+         * Number of clusters, square root of the gallery size when not positive.
+         */
+        private int lists = 0;
+        private int probes = 8;
+        private int iterations = 10;
+
+        public int getLists() {
+            return lists;
+        }
+
+        public void setLists(int lists) {
+            this.lists = lists;
+        }
+
+        public int getProbes() {
+            return probes;
+        }
+
+        public void setProbes(int probes) {
+            this.probes = probes;
+        }
+
+        public int getIterations() {
+            return iterations;
+        }
+
+        public void setIterations(int iterations) {
+            this.iterations = iterations;
+        }
+    }
+
+    /**
+     * Bound of the galleries kept in memory, least recently used ones are dropped beyond it.
+     */
+    public static class Cache {
+        /**
+         * Estimated heap of all loaded galleries, half the maximum heap when not positive.
+         */
+        private long maxBytes = 0;
+
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+
+        public void setMaxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+    }
+
+    /**
+     * Rebuilding of loaded galleries when their project file changes.
+     */
+    public static class Reload {
+        private boolean enabled = true;
+        /**
+         * Quiet period after the last write to a project file before it is reloaded.
+         */
+        private long debounceMs = 2000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getDebounceMs() {
+            return debounceMs;
+        }
+
+        public void setDebounceMs(long debounceMs) {
+            this.debounceMs = debounceMs;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package greeting.robot.server.gallery;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Exhaustive scan of full precision or quantised gallery rows. Large galleries are split into
+ * shards scored in parallel on a dedicated fork/join pool, each shard keeping its own top K,
+ * merged on the way back.
+ * Galleries below {@code gallery.parallel-threshold} rows are scanned on the calling thread.
+ */
+@Component
+public class GalleryScanner {
+
+    @Autowired
+    private GalleryProperties galleryProperties;
+
+    private ForkJoinPool pool;
+
+    /**
+     * Creates a scanner outside of the Spring context, e.g. for benchmarks.
+     */
+    public static GalleryScanner create(GalleryProperties galleryProperties) {
+        GalleryScanner scanner = new GalleryScanner();
+        scanner.galleryProperties = galleryProperties;
+        scanner.postConstruct();
+        return scanner;
+    }
+
+    @PostConstruct
+    public void postConstruct() {
+        int parallelism = galleryProperties.getParallelism() > 0
+                ? galleryProperties.getParallelism()
+                : Runtime.getRuntime().availableProcessors();
+        pool = new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("gallery-scan-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
+    @PreDestroy
+    public void preDestroy() {
+        pool.shutdownNow();
+    }
+
+    public TopK scan(Scannable rows, float[] query, SimilarityMetric metric, int k, float minQuality) {
+        if (rows.size() < galleryProperties.getParallelThreshold() || pool.getParallelism() == 1) {
+            TopK top = new TopK(k, minQuality);
+            rows.scan(query, metric, 0, rows.size(), top);
+            return top;
+        }
+        int shardSize = Math.max(galleryProperties.getShardSize(), 1);
+        return pool.invoke(new ShardTask(rows, query, metric, k, minQuality, 0, rows.size(), shardSize));
+    }
+
+    private static class ShardTask extends RecursiveTask<TopK> {
+        private static final long serialVersionUID = 1L;
+
+        private final Scannable rows;
+        private final float[] query;
+        private final SimilarityMetric metric;
+        private final int k;
+        private final float minQuality;
+        private final int from;
+        private final int to;
+        private final int shardSize;
+
+        ShardTask(Scannable rows, float[] query, SimilarityMetric metric, int k, float minQuality,
+                  int from, int to, int shardSize) {
+            this.rows = rows;
+            this.query = query;
+            this.metric = metric;
+            this.k = k;
+            this.minQuality = minQuality;
+            this.from = from;
+            this.to = to;
+            this.shardSize = shardSize;
+        }
+
+        @Override
+        protected TopK compute() {
+            if (to - from <= shardSize) {
+                TopK top = new TopK(k, minQuality);
+                rows.scan(query, metric, from, to, top);
+                return top;
+            }
+            int middle = (from + to) >>> 1;
+            ShardTask left = new ShardTask(rows, query, metric, k, minQuality, from, middle, shardSize);
+            ShardTask right = new ShardTask(rows, query, metric, k, minQuality, middle, to, shardSize);
+            left.fork();
+            TopK top = right.compute();
+            top.merge(left.join());
+            return top;
+        }
+    }
+}
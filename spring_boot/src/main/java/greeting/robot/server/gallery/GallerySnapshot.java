@@ -0,0 +1,143 @@
+package greeting.robot.server.gallery;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Binary copy of the matching-relevant part of a project, so a restart does not have to
+ * deserialise the whole project graph. Every gallery has its own {@code <gallery>.snapshot} in
+ * {@code gallery.snapshot-path}.
+ * <p>
+ * The file starts with a 40 byte header (magic, version, size and modification time of the
+ * project file it was taken from, dimension, row count, subject count, reserved), followed by the
+ * packed descriptor floats, the subject index of every row and the subjects as id (two longs) and
+ * length-prefixed UTF-8 name. A snapshot whose recorded size or modification time differs from the
+ * project file is stale and ignored.
+ */
+@Component
+public class GallerySnapshot {
+    private static final int MAGIC = 0x47534e50;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 40;
+
+    private final Logger logger = LoggerFactory.getLogger(GallerySnapshot.class);
+
+    @Autowired
+    private GalleryProperties galleryProperties;
+
+    /**
+     * Maps the snapshot of {@code project}, if there is one taken from its current version.
+     */
+    public Optional<Gallery> read(String galleryName, Path project) throws IOException {
+        Path path = path(galleryName);
+        if (!Files.isRegularFile(path) || !Files.isRegularFile(project)) {
+            return Optional.empty();
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                logger.warn("Ignoring truncated gallery snapshot {}", path);
+                return Optional.empty();
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.getInt() != MAGIC || mapped.getInt() != VERSION) {
+                logger.warn("Ignoring {}, it is not a gallery snapshot of this version", path);
+                return Optional.empty();
+            }
+            long projectSize = mapped.getLong();
+            long projectModified = mapped.getLong();
+            if (projectSize != Files.size(project)
+                    || projectModified != Files.getLastModifiedTime(project).toMillis()) {
+                logger.info("Gallery snapshot {} is stale, {} changed since", path, project);
+                return Optional.empty();
+            }
+            int dimension = mapped.getInt();
+            int size = mapped.getInt();
+            int subjectCount = mapped.getInt();
+            mapped.position(HEADER_SIZE);
+
+            float[] vectors = new float[Math.multiplyExact(size, dimension)];
+            mapped.asFloatBuffer().get(vectors);
+            mapped.position(mapped.position() + 4 * vectors.length);
+            int[] subjectIndices = new int[size];
+            mapped.asIntBuffer().get(subjectIndices);
+            mapped.position(mapped.position() + 4 * size);
+
+            UUID[] ids = new UUID[subjectCount];
+            String[] names = new String[subjectCount];
+            for (int i = 0; i < subjectCount; i++) {
+                ids[i] = new UUID(mapped.getLong(), mapped.getLong());
+                byte[] bytes = new byte[mapped.getInt()];
+                mapped.get(bytes);
+                names[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return Optional.of(Gallery.of(dimension, vectors, subjectIndices, new SubjectTable(ids, names)));
+        } catch (RuntimeException e) {
+            logger.warn("Ignoring unreadable gallery snapshot " + path, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Stores {@code gallery} as the snapshot of {@code project}, whose size and modification time are
+     * those it had when it was loaded. The file is replaced atomically, so a crash never leaves a
+     * partial snapshot behind.
+     */
+    public void write(String galleryName, Path project, long projectSize, long projectModified, Gallery gallery)
+            throws IOException {
+        Path path = path(galleryName).toAbsolutePath();
+        SubjectTable subjects = gallery.getSubjects();
+        byte[][] names = new byte[subjects.size()][];
+        long length = HEADER_SIZE + 4L * gallery.size() * gallery.getDimension() + 4L * gallery.size();
+        for (int i = 0; i < names.length; i++) {
+            names[i] = subjects.name(i).getBytes(StandardCharsets.UTF_8);
+            length += 20 + names[i].length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(length));
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(projectSize).putLong(projectModified)
+                .putInt(gallery.getDimension()).putInt(gallery.size()).putInt(subjects.size()).putInt(0);
+        buffer.asFloatBuffer().put(gallery.vectors(), 0, gallery.size() * gallery.getDimension());
+        buffer.position(buffer.position() + 4 * gallery.size() * gallery.getDimension());
+        for (int row = 0; row < gallery.size(); row++) {
+            buffer.putInt(gallery.getSubjectIndex(row));
+        }
+        for (int i = 0; i < names.length; i++) {
+            buffer.putLong(subjects.id(i).getMostSignificantBits())
+                    .putLong(subjects.id(i).getLeastSignificantBits())
+                    .putInt(names[i].length)
+                    .put(names[i]);
+        }
+        buffer.flip();
+
+        Files.createDirectories(path.getParent());
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Wrote gallery snapshot of {} descriptors from {} to {}", gallery.size(), project, path);
+    }
+
+    private Path path(String galleryName) {
+        return Paths.get(galleryProperties.getSnapshotPath()).resolve(galleryName + ".snapshot");
+    }
+}
@@ -0,0 +1,211 @@
+package greeting.robot.server.gallery;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Hierarchical navigable small world graph (Malkov, Yashunin) over the rows of a gallery.
+ * <p>
+ * {@code m} bounds the number of links per node (twice that on the bottom layer),
+ * {@code efConstruction} the breadth of the search used while linking and {@code efSearch}
+ * the breadth of a query - the larger, the better the recall and the slower the lookup.
+ */
+public class HnswIndex implements GalleryIndex {
+    private static final long SEED = 42;
+
+    private final Gallery gallery;
+    private final SimilarityMetric metric;
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+    private final double levelMultiplier;
+    private final Random random = new Random(SEED);
+
+    /**
+     * links[node][level] holds the neighbour count at index 0 followed by neighbour rows.
+     */
+    private final int[][][] links;
+    private final long sizeInBytes;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    public HnswIndex(Gallery gallery, SimilarityMetric metric, int m, int efConstruction, int efSearch) {
+        this.gallery = gallery;
+        this.metric = metric;
+        this.m = m;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.efSearch = efSearch;
+        this.levelMultiplier = 1 / Math.log(Math.max(m, 2));
+        this.links = new int[gallery.size()][][];
+        for (int row = 0; row < gallery.size(); row++) {
+            insert(row);
+        }
+        long bytes = 16 + 4L * links.length;
+        for (int[][] levels : links) {
+            bytes += 16 + 4L * levels.length;
+            for (int[] neighbours : levels) {
+                bytes += 16 + 4L * neighbours.length;
+            }
+        }
+        this.sizeInBytes = bytes;
+    }
+
+    @Override
+    public int[] search(float[] query, int count) {
+        if (entryPoint < 0) {
+            return new int[0];
+        }
+        int current = entryPoint;
+        float currentScore = gallery.score(query, current, metric);
+        for (int level = maxLevel; level > 0; level--) {
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                int[] neighbours = links[current][level];
+                for (int i = 1; i <= neighbours[0]; i++) {
+                    float score = gallery.score(query, neighbours[i], metric);
+                    if (score > currentScore) {
+                        currentScore = score;
+                        current = neighbours[i];
+                        changed = true;
+                    }
+                }
+            }
+        }
+        PriorityQueue<Candidate> found = searchLayer(
+                new Candidate(current, currentScore), Math.max(efSearch, count), 0,
+                row -> gallery.score(query, row, metric));
+        while (found.size() > count) {
+            found.poll();
+        }
+        return Candidate.rowsBestFirst(found);
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return sizeInBytes;
+    }
+
+    private void insert(int row) {
+        int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+        links[row] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            links[row][l] = new int[maxLinks(l) + 1];
+        }
+        if (entryPoint < 0) {
+            entryPoint = row;
+            maxLevel = level;
+            return;
+        }
+
+        Scorer scorer = other -> gallery.score(row, other, metric);
+        int current = entryPoint;
+        float currentScore = scorer.score(current);
+        for (int l = maxLevel; l > level; l--) {
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                int[] neighbours = links[current][l];
+                for (int i = 1; i <= neighbours[0]; i++) {
+                    float score = scorer.score(neighbours[i]);
+                    if (score > currentScore) {
+                        currentScore = score;
+                        current = neighbours[i];
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+        Candidate entry = new Candidate(current, currentScore);
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            PriorityQueue<Candidate> found = searchLayer(entry, efConstruction, l, scorer);
+            List<Candidate> bestFirst = new ArrayList<>(found);
+            bestFirst.sort(Candidate.BEST_FIRST);
+            entry = bestFirst.get(0);
+            for (int i = 0; i < Math.min(m, bestFirst.size()); i++) {
+                int neighbour = bestFirst.get(i).row;
+                addLink(row, neighbour, l);
+                addLink(neighbour, row, l);
+            }
+        }
+
+        if (level > maxLevel) {
+            entryPoint = row;
+            maxLevel = level;
+        }
+    }
+
+    /**
+     * Links {@code from} to {@code to}, dropping the least similar neighbour once the node is full.
+     */
+    private void addLink(int from, int to, int level) {
+        int[] neighbours = links[from][level];
+        int count = neighbours[0];
+        if (count < neighbours.length - 1) {
+            neighbours[++count] = to;
+            neighbours[0] = count;
+            return;
+        }
+        int worst = -1;
+        float worstScore = gallery.score(from, to, metric);
+        for (int i = 1; i <= count; i++) {
+            float score = gallery.score(from, neighbours[i], metric);
+            if (score < worstScore) {
+                worstScore = score;
+                worst = i;
+            }
+        }
+        if (worst > 0) {
+            neighbours[worst] = to;
+        }
+    }
+
+    /**
+     * Best-first beam search of one layer, returns up to {@code ef} candidates in a worst-first queue.
+     */
+    private PriorityQueue<Candidate> searchLayer(Candidate entry, int ef, int level, Scorer scorer) {
+        BitSet visited = new BitSet(links.length);
+        visited.set(entry.row);
+        PriorityQueue<Candidate> toVisit = new PriorityQueue<>(Candidate.BEST_FIRST);
+        PriorityQueue<Candidate> found = new PriorityQueue<>(Candidate.WORST_FIRST);
+        toVisit.add(entry);
+        found.add(entry);
+
+        while (!toVisit.isEmpty()) {
+            Candidate closest = toVisit.poll();
+            if (found.size() >= ef && closest.score < found.peek().score) {
+                break;
+            }
+            int[] neighbours = links[closest.row][level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int neighbour = neighbours[i];
+                if (visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+                float score = scorer.score(neighbour);
+                if (found.size() < ef || score > found.peek().score) {
+                    Candidate candidate = new Candidate(neighbour, score);
+                    toVisit.add(candidate);
+                    found.add(candidate);
+                    if (found.size() > ef) {
+                        found.poll();
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    private int maxLinks(int level) {
+        return level == 0 ? 2 * m : m;
+    }
+
+    private interface Scorer {
+        float score(int row);
+    }
+}
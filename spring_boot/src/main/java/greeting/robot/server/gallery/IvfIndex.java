@@ -0,0 +1,130 @@
+package greeting.robot.server.gallery;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Inverted-file index: rows are clustered with k-means and a query only scans the members
+ * of the {@code probes} clusters whose centroids are most similar to it.
+ * More lists make every probe cheaper, more probes raise the recall.
+ */
+public class IvfIndex implements GalleryIndex {
+    private static final long SEED = 42;
+
+    private final Gallery gallery;
+    private final SimilarityMetric metric;
+    private final int probes;
+    private final int dimension;
+    private final float[] centroids;
+    private final int[][] lists;
+
+    /**
+     * @param lists      number of clusters, {@code sqrt(size)} when not positive
+     * @param iterations k-means iterations run while building
+     */
+    public IvfIndex(Gallery gallery, SimilarityMetric metric, int lists, int probes, int iterations) {
+        this.gallery = gallery;
+        this.metric = metric;
+        this.dimension = gallery.getDimension();
+        int listCount = Math.max(1, Math.min(gallery.size(),
+                lists > 0 ? lists : (int) Math.sqrt(gallery.size())));
+        this.probes = Math.min(Math.max(1, probes), listCount);
+        this.centroids = new float[listCount * dimension];
+
+        int[] assignment = new int[gallery.size()];
+        initCentroids(listCount);
+        for (int i = 0; i < iterations; i++) {
+            assign(assignment, listCount);
+            updateCentroids(assignment, listCount);
+        }
+        assign(assignment, listCount);
+
+        int[] sizes = new int[listCount];
+        for (int list : assignment) {
+            sizes[list]++;
+        }
+        this.lists = new int[listCount][];
+        for (int list = 0; list < listCount; list++) {
+            this.lists[list] = new int[sizes[list]];
+        }
+        Arrays.fill(sizes, 0);
+        for (int row = 0; row < assignment.length; row++) {
+            int list = assignment[row];
+            this.lists[list][sizes[list]++] = row;
+        }
+    }
+
+    @Override
+    public long sizeInBytes() {
+        long bytes = 4L * centroids.length + 16L * lists.length;
+        for (int[] list : lists) {
+            bytes += 4L * list.length;
+        }
+        return bytes;
+    }
+
+    @Override
+    public int[] search(float[] query, int count) {
+        TopK nearestLists = new TopK(probes, Float.NEGATIVE_INFINITY);
+        for (int list = 0; list < lists.length; list++) {
+            nearestLists.offer(list, metric.score(query, 0, centroids, list * dimension, dimension));
+        }
+
+        TopK found = new TopK(Math.max(count, 1), Float.NEGATIVE_INFINITY);
+        for (int i = 0; i < nearestLists.size(); i++) {
+            for (int row : lists[nearestLists.row(i)]) {
+                found.offer(row, gallery.score(query, row, metric));
+            }
+        }
+        return found.sort().rows();
+    }
+
+    private void initCentroids(int listCount) {
+        Random random = new Random(SEED);
+        float[] vectors = gallery.vectors();
+        int stride = gallery.size() / listCount;
+        for (int list = 0; list < listCount; list++) {
+            int row = list * stride + random.nextInt(Math.max(stride, 1));
+            System.arraycopy(vectors, row * dimension, centroids, list * dimension, dimension);
+        }
+    }
+
+    private void assign(int[] assignment, int listCount) {
+        float[] vectors = gallery.vectors();
+        for (int row = 0; row < assignment.length; row++) {
+            int best = 0;
+            float bestScore = Float.NEGATIVE_INFINITY;
+            for (int list = 0; list < listCount; list++) {
+                float score = metric.score(vectors, row * dimension, centroids, list * dimension, dimension);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = list;
+                }
+            }
+            assignment[row] = best;
+        }
+    }
+
+    /**
+     * Moves every centroid to the mean of its members, empty clusters keep their old centroid.
+     */
+    private void updateCentroids(int[] assignment, int listCount) {
+        float[] vectors = gallery.vectors();
+        float[] sums = new float[centroids.length];
+        int[] sizes = new int[listCount];
+        for (int row = 0; row < assignment.length; row++) {
+            int list = assignment[row];
+            sizes[list]++;
+            for (int i = 0; i < dimension; i++) {
+                sums[list * dimension + i] += vectors[row * dimension + i];
+            }
+        }
+        for (int list = 0; list < listCount; list++) {
+            if (sizes[list] > 0) {
+                for (int i = 0; i < dimension; i++) {
+                    centroids[list * dimension + i] = sums[list * dimension + i] / sizes[list];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package greeting.robot.server.gallery;
+
+import greeting.robot.data.api.Result;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Gallery accepting new descriptors while it is being searched.
+ * <p>
+ * The published state is an immutable pair of segments: a {@link Matcher} over the base gallery
+ * and a small delta of rows enrolled since, scanned exactly. Enrollment copies the delta with one
+ * more row and publishes a new state, so readers only do one volatile read and never lock nor see
+ * a half-built gallery. Once the delta reaches the compaction threshold, a new base including it
+ * is built on a background thread and swapped in together with the rows enrolled meanwhile.
+ */
+public class LiveGallery {
+    private final Logger logger = LoggerFactory.getLogger(LiveGallery.class);
+
+    private final Object writeLock = new Object();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(
+            runnable -> {
+                Thread thread = new Thread(runnable, "gallery-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+    private final int compactThreshold;
+    private volatile State state;
+    private boolean compacting;
+
+    public LiveGallery(Matcher base, int compactThreshold) {
+        this.compactThreshold = compactThreshold;
+        this.state = new State(base, emptyDelta(base.getGallery()), 0);
+    }
+
+    /**
+     * Returns at most {@code k} best matches scoring at least {@code minQuality}, best first.
+     */
+    public List<Result> identify(float[] query, int k, float minQuality, GalleryScanner scanner) {
+        State current = state;
+        Gallery base = current.base.getGallery();
+        boolean onePerSubject = current.base.getProperties().getSubjectFilter().isEnabled();
+        TopK top = current.base.search(query, k, minQuality, scanner);
+        if (current.delta.size() > 0) {
+            // with one match per subject, further rows of subjects already found must not push
+            // other subjects out before the names are deduplicated, so every delta match is kept
+            TopK fromDelta = new TopK(onePerSubject ? current.delta.size() : k, minQuality);
+            current.delta.scan(query, current.base.getMetric(), 0, current.delta.size(), fromDelta);
+            if (onePerSubject) {
+                TopK fromBase = top;
+                top = new TopK(fromBase.size() + fromDelta.size(), minQuality);
+                top.merge(fromBase);
+            }
+            for (int i = 0; i < fromDelta.size(); i++) {
+                top.offer(base.size() + fromDelta.row(i), fromDelta.score(i));
+            }
+        }
+        top.sort();
+
+        Set<String> names = onePerSubject ? new HashSet<>() : null;
+        List<Result> results = new ArrayList<>(Math.min(k, top.size()));
+        for (int i = 0; i < top.size() && results.size() < k; i++) {
+            int row = top.row(i);
+            String name = row < base.size()
+                    ? base.getSubjectName(row)
+                    : current.delta.getSubjectName(row - base.size());
+            if (names == null || names.add(name)) {
+                results.add(Result.of(name, top.score(i)));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Publishes one more descriptor, visible to every {@link #identify} starting after this returns.
+     */
+    public void enroll(UUID subjectId, String name, float[] descriptor) {
+        checkDimension(descriptor);
+        Gallery row = Gallery.of(descriptor.length, descriptor.clone(), new int[]{0},
+                new SubjectTable(new UUID[]{subjectId}, new String[]{name}));
+        synchronized (writeLock) {
+            State current = state;
+            state = new State(current.base, current.delta.concat(row), current.version + 1);
+            if (!compacting && state.delta.size() >= compactThreshold) {
+                compacting = true;
+                State snapshot = state;
+                compactor.execute(() -> compact(snapshot));
+            }
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException when {@code descriptor} cannot be enrolled into this gallery
+     */
+    public void checkDimension(float[] descriptor) {
+        int dimension = state.base.getGallery().getDimension();
+        if (dimension != 0 && descriptor.length != dimension) {
+            throw new IllegalArgumentException("Descriptor of length " + descriptor.length
+                    + " does not match gallery dimension " + dimension);
+        }
+    }
+
+    /**
+     * Atomically replaces the whole gallery, dropping any delta, e.g. after the project was reloaded.
+     */
+    public void replace(Matcher base) {
+        replace(base, emptyDelta(base.getGallery()));
+    }
+
+    /**
+     * Atomically replaces the whole gallery by {@code base} plus the not yet indexed rows of {@code delta}.
+     * Searches already running finish on the previous gallery.
+     */
+    public void replace(Matcher base, Gallery delta) {
+        synchronized (writeLock) {
+            state = new State(base, delta, state.version + 1);
+        }
+    }
+
+    public int size() {
+        State current = state;
+        return current.base.getGallery().size() + current.delta.size();
+    }
+
+    public int deltaSize() {
+        return state.delta.size();
+    }
+
+    /**
+     * Estimated heap taken by the indexed gallery and the enrolled rows not merged into it yet.
+     */
+    public long sizeInBytes() {
+        State current = state;
+        return current.base.sizeInBytes() + current.delta.sizeInBytes();
+    }
+
+    public long version() {
+        return state.version;
+    }
+
+    public Matcher getBase() {
+        return state.base;
+    }
+
+    public void close() {
+        compactor.shutdownNow();
+    }
+
+    private void compact(State snapshot) {
+        long start = System.currentTimeMillis();
+        try {
+            Matcher merged = Matcher.build(snapshot.base.toGallery().concat(snapshot.delta),
+                    snapshot.base.getMetric(), snapshot.base.getProperties());
+            synchronized (writeLock) {
+                State current = state;
+                if (current.base == snapshot.base) {
+                    Gallery rest = current.delta.rows(snapshot.delta.size(), current.delta.size());
+                    state = new State(merged, rest, current.version + 1);
+                }
+            }
+            logger.info("Compacted {} enrolled descriptors into the gallery in {} ms",
+                    snapshot.delta.size(), System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            logger.error("Gallery compaction failed", e);
+        } finally {
+            synchronized (writeLock) {
+                compacting = false;
+            }
+        }
+    }
+
+    private static Gallery emptyDelta(Gallery base) {
+        return Gallery.of(base.getDimension(), new float[0], new int[0], SubjectTable.empty());
+    }
+
+    private static final class State {
+        private final Matcher base;
+        private final Gallery delta;
+        private final long version;
+
+        State(Matcher base, Gallery delta, long version) {
+            this.base = base;
+            this.delta = delta;
+            this.version = version;
+        }
+    }
+}
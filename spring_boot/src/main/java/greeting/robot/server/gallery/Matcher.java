@@ -0,0 +1,141 @@
+package greeting.robot.server.gallery;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Immutable gallery together with every structure derived from it for matching: the optional
+ * approximate index, quantised rows and subject centroids, as selected by {@link GalleryProperties}.
+ * <p>
+ * Quantised rows are only scanned by the exact search. Without re-ranking they replace the full
+ * precision rows, which are dropped, so the gallery takes 2 (float16) to 4 (int8) times less heap.
+ */
+public final class Matcher {
+    private static final Logger logger = LoggerFactory.getLogger(Matcher.class);
+
+    private final Gallery gallery;
+    private final SimilarityMetric metric;
+    private final GalleryProperties properties;
+    private final GalleryIndex index;
+    private final QuantizedGallery quantized;
+    private final SubjectCentroids subjectCentroids;
+
+    private Matcher(Gallery gallery, SimilarityMetric metric, GalleryProperties properties, GalleryIndex index,
+                    QuantizedGallery quantized, SubjectCentroids subjectCentroids) {
+        this.gallery = gallery;
+        this.metric = metric;
+        this.properties = properties;
+        this.index = index;
+        this.quantized = quantized;
+        this.subjectCentroids = subjectCentroids;
+    }
+
+    public static Matcher build(Gallery gallery, SimilarityMetric metric, GalleryProperties properties) {
+        SubjectCentroids subjectCentroids = null;
+        if (properties.getSubjectFilter().isEnabled()) {
+            subjectCentroids = SubjectCentroids.of(gallery, metric);
+            logger.info("Built centroids of {} subjects", subjectCentroids.subjectCount());
+        }
+
+        Gallery searched = gallery;
+        QuantizedGallery quantized = null;
+        QuantizedGallery.Mode quantization = properties.getQuantizationMode();
+        if (quantization != null && (properties.getIndex() != GalleryProperties.IndexType.EXACT
+                || subjectCentroids != null)) {
+            logger.warn("Ignoring gallery.quantization={}, only the exact scan without subject filter uses it",
+                    quantization);
+        } else if (quantization != null) {
+            quantized = QuantizedGallery.of(gallery, quantization);
+            long fullBytes = 4L * gallery.size() * gallery.getDimension();
+            if (properties.getRerank() > 0) {
+                logger.info("Quantised gallery to {}: {} bytes, plus {} bytes of full precision rows kept "
+                        + "for re-ranking", quantization, quantized.sizeInBytes(), fullBytes);
+            } else {
+                searched = gallery.withoutVectors();
+                logger.info("Quantised gallery to {}: {} bytes instead of {}", quantization,
+                        quantized.sizeInBytes(), fullBytes);
+            }
+        }
+
+        GalleryIndex index = null;
+        if (properties.getIndex() != GalleryProperties.IndexType.EXACT) {
+            long start = System.currentTimeMillis();
+            index = properties.createIndex(gallery, metric);
+            logger.info("Built {} index in {} ms", properties.getIndex(), System.currentTimeMillis() - start);
+        }
+        return new Matcher(searched, metric, properties, index, quantized, subjectCentroids);
+    }
+
+    /**
+     * Returns at most {@code k} rows scoring at least {@code minQuality}, not sorted yet.
+     *
+     * @throws IllegalArgumentException when {@code query} does not match the gallery dimension
+     */
+    public TopK search(float[] query, int k, float minQuality, GalleryScanner scanner) {
+        if (gallery.size() > 0 && query.length != gallery.getDimension()) {
+            throw new IllegalArgumentException("Query of length " + query.length
+                    + " does not match gallery dimension " + gallery.getDimension());
+        }
+        TopK top;
+        if (index != null) {
+            top = new TopK(k, minQuality);
+            for (int row : index.search(query, Math.max(k, properties.getRescore()))) {
+                top.offer(row, gallery.score(query, row, metric));
+            }
+        } else if (subjectCentroids != null) {
+            top = subjectCentroids.search(query, metric, k, minQuality, properties.getSubjectFilter().getExpand());
+        } else if (quantized != null && properties.getRerank() > 0) {
+            TopK candidates = scanner.scan(quantized, query, metric,
+                    Math.max(k, properties.getRerank()), Float.NEGATIVE_INFINITY);
+            top = new TopK(k, minQuality);
+            for (int i = 0; i < candidates.size(); i++) {
+                top.offer(candidates.row(i), gallery.score(query, candidates.row(i), metric));
+            }
+        } else if (quantized != null) {
+            top = scanner.scan(quantized, query, metric, k, minQuality);
+        } else {
+            top = scanner.scan(gallery, query, metric, k, minQuality);
+        }
+        return top;
+    }
+
+    /**
+     * Estimated heap taken by the gallery and everything built from it.
+     */
+    public long sizeInBytes() {
+        long bytes = gallery.sizeInBytes();
+        if (index != null) {
+            bytes += index.sizeInBytes();
+        }
+        if (quantized != null) {
+            bytes += quantized.sizeInBytes();
+        }
+        if (subjectCentroids != null) {
+            bytes += subjectCentroids.sizeInBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * The gallery searched, without descriptors when only its quantised rows are kept.
+     */
+    public Gallery getGallery() {
+        return gallery;
+    }
+
+    /**
+     * The gallery with descriptors of every row, dequantised when only quantised rows are kept,
+     * for building a new matcher from it.
+     */
+    public Gallery toGallery() {
+        return gallery.hasVectors() ? gallery : gallery.withVectors(quantized.dequantize());
+    }
+
+    public SimilarityMetric getMetric() {
+        return metric;
+    }
+
+    public GalleryProperties getProperties() {
+        return properties;
+    }
+}
@@ -0,0 +1,128 @@
+package greeting.robot.server.gallery;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Reports changes of the project files of galleries. A change is reported once nothing has been
+ * written to the file for the debounce period, so a project saved in several writes, or replaced
+ * through a temporary file, is reloaded once and complete.
+ * <p>
+ * Every gallery has its own directory, watched while the gallery is loaded. Changes are reported
+ * on the watcher thread, listeners should hand the actual work over.
+ */
+public class ProjectWatcher implements Closeable {
+    private final Logger logger = LoggerFactory.getLogger(ProjectWatcher.class);
+
+    private final WatchService watchService;
+    private final long debounceNanos;
+    private final Consumer<String> listener;
+    private final Map<WatchKey, Watched> watchedByKey = new ConcurrentHashMap<>();
+    private final Map<String, WatchKey> keysByGallery = new ConcurrentHashMap<>();
+    /**
+     * Galleries changed lately and when they are due to be reported, touched by the watcher thread only.
+     */
+    private final Map<String, Long> pending = new HashMap<>();
+    private final Thread thread;
+
+    public ProjectWatcher(long debounceMs, Consumer<String> listener) throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(debounceMs);
+        this.listener = listener;
+        this.thread = new Thread(this::run, "project-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void watch(String gallery, Path projectFile) throws IOException {
+        Path absolute = projectFile.toAbsolutePath();
+        WatchKey key = absolute.getParent().register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        watchedByKey.put(key, new Watched(gallery, absolute.getFileName()));
+        keysByGallery.put(gallery, key);
+    }
+
+    public void unwatch(String gallery) {
+        WatchKey key = keysByGallery.remove(gallery);
+        if (key != null) {
+            key.cancel();
+            watchedByKey.remove(key);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        thread.interrupt();
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key;
+                if (pending.isEmpty()) {
+                    key = watchService.take();
+                } else {
+                    long wait = pending.values().stream().mapToLong(Long::longValue).min().getAsLong()
+                            - System.nanoTime();
+                    key = watchService.poll(Math.max(0, wait), TimeUnit.NANOSECONDS);
+                }
+                if (key != null) {
+                    Watched watched = watchedByKey.get(key);
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (watched != null && (event.kind() == StandardWatchEventKinds.OVERFLOW
+                                || watched.fileName.equals(event.context()))) {
+                            pending.put(watched.gallery, System.nanoTime() + debounceNanos);
+                        }
+                    }
+                    key.reset();
+                }
+                reportDue();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            logger.debug("Project watcher stopped");
+        }
+    }
+
+    private void reportDue() {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<String, Long>> entries = pending.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, Long> entry = entries.next();
+            if (entry.getValue() - now <= 0) {
+                entries.remove();
+                try {
+                    listener.accept(entry.getKey());
+                } catch (RuntimeException e) {
+                    logger.error("Handling the change of gallery " + entry.getKey() + " failed", e);
+                }
+            }
+        }
+    }
+
+    private static final class Watched {
+        private final String gallery;
+        private final Path fileName;
+
+        Watched(String gallery, Path fileName) {
+            this.gallery = gallery;
+            this.fileName = fileName;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package greeting.robot.server.gallery;
+
+/**
+ * Compact copy of the rows of a {@link Gallery}, scored directly in quantised form.
+ * <p>
+ * INT8 keeps one signed byte per component plus a per-row scale (max |component| / 127),
+ * FLOAT16 keeps IEEE half floats. Squared norms of the dequantised rows are precomputed, so every
+ * {@link SimilarityMetric} reduces to a single dot product per row.
+ */
+public final class QuantizedGallery implements Scannable {
+
+    public enum Mode {
+        INT8, FLOAT16
+    }
+
+    private static final float[] HALF_TO_FLOAT = new float[1 << 16];
+
+    static {
+        for (int i = 0; i < HALF_TO_FLOAT.length; i++) {
+            HALF_TO_FLOAT[i] = halfToFloat((short) i);
+        }
+    }
+
+    private final Mode mode;
+    private final int dimension;
+    private final int size;
+    private final byte[] bytes;
+    private final float[] scales;
+    private final short[] halves;
+    private final float[] normsSq;
+
+    private QuantizedGallery(Mode mode, int dimension, int size, byte[] bytes, float[] scales, short[] halves,
+                             float[] normsSq) {
+        this.mode = mode;
+        this.dimension = dimension;
+        this.size = size;
+        this.bytes = bytes;
+        this.scales = scales;
+        this.halves = halves;
+        this.normsSq = normsSq;
+    }
+
+    public static QuantizedGallery of(Gallery gallery, Mode mode) {
+        int dimension = gallery.getDimension();
+        int size = gallery.size();
+        float[] vectors = gallery.vectors();
+        float[] normsSq = new float[size];
+
+        if (mode == Mode.INT8) {
+            byte[] bytes = new byte[size * dimension];
+            float[] scales = new float[size];
+            for (int row = 0; row < size; row++) {
+                int offset = row * dimension;
+                float max = 0;
+                for (int i = 0; i < dimension; i++) {
+                    max = Math.max(max, Math.abs(vectors[offset + i]));
+                }
+                float scale = max == 0 ? 1 : max / 127;
+                float normSq = 0;
+                for (int i = 0; i < dimension; i++) {
+                    byte quantized = (byte) Math.round(vectors[offset + i] / scale);
+                    bytes[offset + i] = quantized;
+                    normSq += quantized * quantized;
+                }
+                scales[row] = scale;
+                normsSq[row] = normSq * scale * scale;
+            }
+            return new QuantizedGallery(mode, dimension, size, bytes, scales, null, normsSq);
+        }
+
+        short[] halves = new short[size * dimension];
+        for (int row = 0; row < size; row++) {
+            int offset = row * dimension;
+            float normSq = 0;
+            for (int i = 0; i < dimension; i++) {
+                short half = floatToHalf(vectors[offset + i]);
+                halves[offset + i] = half;
+                float value = HALF_TO_FLOAT[half & 0xffff];
+                normSq += value * value;
+            }
+            normsSq[row] = normSq;
+        }
+        return new QuantizedGallery(mode, dimension, size, null, null, halves, normsSq);
+    }
+
+    @Override
+    public void scan(float[] query, SimilarityMetric metric, int from, int to, TopK top) {
+        if (size > 0 && query.length != dimension) {
+            throw new IllegalArgumentException("Query of length " + query.length
+                    + " does not match gallery dimension " + dimension);
+        }
+        float queryNormSq = 0;
+        for (float value : query) {
+            queryNormSq += value * value;
+        }
+        for (int row = from; row < to; row++) {
+            float dot = mode == Mode.INT8 ? int8Dot(query, row) : halfDot(query, row);
+            top.offer(row, metric.fromDot(dot, queryNormSq, normsSq[row]));
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Full precision rows holding exactly the quantised values, which quantise back to the same rows.
+     */
+    float[] dequantize() {
+        float[] vectors = new float[size * dimension];
+        for (int row = 0, offset = 0; row < size; row++, offset += dimension) {
+            for (int i = 0; i < dimension; i++) {
+                vectors[offset + i] = mode == Mode.INT8
+                        ? bytes[offset + i] * scales[row]
+                        : HALF_TO_FLOAT[halves[offset + i] & 0xffff];
+            }
+        }
+        return vectors;
+    }
+
+    /**
+     * Heap taken by the quantised rows, for comparison with {@code 4 * size * dimension} of a full gallery.
+     */
+    public long sizeInBytes() {
+        long rows = mode == Mode.INT8 ? (long) bytes.length + 4L * scales.length : 2L * halves.length;
+        return rows + 4L * normsSq.length;
+    }
+
+    private float int8Dot(float[] query, int row) {
+        int offset = row * dimension;
+        float s0 = 0, s1 = 0;
+        int i = 0;
+        for (; i + 1 < dimension; i += 2) {
+            s0 += query[i] * bytes[offset + i];
+            s1 += query[i + 1] * bytes[offset + i + 1];
+        }
+        for (; i < dimension; i++) {
+            s0 += query[i] * bytes[offset + i];
+        }
+        return (s0 + s1) * scales[row];
+    }
+
+    private float halfDot(float[] query, int row) {
+        int offset = row * dimension;
+        float sum = 0;
+        for (int i = 0; i < dimension; i++) {
+            sum += query[i] * HALF_TO_FLOAT[halves[offset + i] & 0xffff];
+        }
+        return sum;
+    }
+
+    static short floatToHalf(float value) {
+        int bits = Float.floatToIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = ((bits >>> 23) & 0xff) - 127 + 15;
+        int mantissa = bits & 0x7fffff;
+        if (((bits >>> 23) & 0xff) == 0xff) {
+            return (short) (sign | 0x7c00 | (mantissa != 0 ? 0x200 : 0));
+        }
+        if (exponent >= 0x1f) {
+            return (short) (sign | 0x7c00);
+        }
+        if (exponent <= 0) {
+            if (exponent < -10) {
+                return (short) sign;
+            }
+            mantissa |= 0x800000;
+            int shift = 14 - exponent;
+            int half = mantissa >> shift;
+            if (((mantissa >> (shift - 1)) & 1) != 0) {
+                half++;
+            }
+            return (short) (sign | half);
+        }
+        int half = sign | (exponent << 10) | (mantissa >> 13);
+        if ((mantissa & 0x1000) != 0) {
+            half++;
+        }
+        return (short) half;
+    }
+
+    static float halfToFloat(short half) {
+        int bits = half & 0xffff;
+        int sign = (bits & 0x8000) << 16;
+        int exponent = (bits >>> 10) & 0x1f;
+        int mantissa = bits & 0x3ff;
+        if (exponent == 0) {
+            if (mantissa == 0) {
+                return Float.intBitsToFloat(sign);
+            }
+            while ((mantissa & 0x400) == 0) {
+                mantissa <<= 1;
+                exponent--;
+            }
+            exponent++;
+            mantissa &= 0x3ff;
+        } else if (exponent == 0x1f) {
+            return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+        }
+        return Float.intBitsToFloat(sign | ((exponent + 127 - 15) << 23) | (mantissa << 13));
+    }
+}
@@ -0,0 +1,14 @@
+package greeting.robot.server.gallery;
+
+/**
+ * Row storage that can be scored exhaustively, in full precision or quantised.
+ */
+public interface Scannable {
+
+    int size();
+
+    /**
+     * Scores rows {@code [from, to)} and offers every one of them to {@code top}.
+     */
+    void scan(float[] query, SimilarityMetric metric, int from, int to, TopK top);
+}
@@ -0,0 +1,87 @@
+package greeting.robot.server.gallery;
+
+/**
+ * Pure-Java similarity functions over rows of a packed descriptor matrix.
+ * One of them is expected to reproduce {@code PwFaceAnalysisLib.compareDescriptors},
+ * see {@link greeting.robot.server.DescriptorService} for how it is picked.
+ */
+public enum SimilarityMetric {
+    COSINE {
+        @Override
+        public float score(float[] a, int aOffset, float[] b, int bOffset, int dimension) {
+            float dot = 0, normA = 0, normB = 0;
+            for (int i = 0; i < dimension; i++) {
+                float x = a[aOffset + i];
+                float y = b[bOffset + i];
+                dot += x * y;
+                normA += x * x;
+                normB += y * y;
+            }
+            if (normA == 0 || normB == 0) {
+                return 0;
+            }
+            return (float) (dot / Math.sqrt((double) normA * normB));
+        }
+
+        @Override
+        public float fromDot(float dot, float firstNormSq, float secondNormSq) {
+            if (firstNormSq == 0 || secondNormSq == 0) {
+                return 0;
+            }
+            return (float) (dot / Math.sqrt((double) firstNormSq * secondNormSq));
+        }
+    },
+    DOT {
+        @Override
+        public float score(float[] a, int aOffset, float[] b, int bOffset, int dimension) {
+            float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+            int i = 0;
+            for (; i + 3 < dimension; i += 4) {
+                s0 += a[aOffset + i] * b[bOffset + i];
+                s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+                s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+                s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+            }
+            for (; i < dimension; i++) {
+                s0 += a[aOffset + i] * b[bOffset + i];
+            }
+            return s0 + s1 + s2 + s3;
+        }
+
+        @Override
+        public float fromDot(float dot, float firstNormSq, float secondNormSq) {
+            return dot;
+        }
+    },
+    /**
+     * 1 / (1 + euclidean distance), so that higher still means more similar.
+     */
+    EUCLIDEAN {
+        @Override
+        public float score(float[] a, int aOffset, float[] b, int bOffset, int dimension) {
+            float sum = 0;
+            for (int i = 0; i < dimension; i++) {
+                float d = a[aOffset + i] - b[bOffset + i];
+                sum += d * d;
+            }
+            return (float) (1 / (1 + Math.sqrt(sum)));
+        }
+
+        @Override
+        public float fromDot(float dot, float firstNormSq, float secondNormSq) {
+            return (float) (1 / (1 + Math.sqrt(Math.max(0, firstNormSq - 2 * dot + secondNormSq))));
+        }
+    };
+
+    public abstract float score(float[] a, int aOffset, float[] b, int bOffset, int dimension);
+
+    /**
+     * Same score computed from the dot product and squared norms of both vectors, for
+     * representations such as {@link QuantizedGallery} that only provide a dot product.
+     */
+    public abstract float fromDot(float dot, float firstNormSq, float secondNormSq);
+
+    public float score(float[] a, float[] b) {
+        return score(a, 0, b, 0, a.length);
+    }
+}
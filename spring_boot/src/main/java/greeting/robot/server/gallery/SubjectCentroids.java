@@ -0,0 +1,114 @@
+package greeting.robot.server.gallery;
+
+/**
+ * Per-subject aggregate of a {@link Gallery}: the centroid of all marks of every subject.
+ * A search scores the centroids first and only expands the most promising subjects to their
+ * individual marks, so it costs roughly {@code subjects + expand * marksPerSubject} comparisons
+ * instead of one per mark, and yields at most one row per subject.
+ */
+public final class SubjectCentroids {
+    private final Gallery gallery;
+    private final int dimension;
+    private final float[] centroids;
+    private final int[][] rowsBySubject;
+    private final int[] subjectsWithRows;
+
+    private SubjectCentroids(Gallery gallery, float[] centroids, int[][] rowsBySubject, int[] subjectsWithRows) {
+        this.gallery = gallery;
+        this.dimension = gallery.getDimension();
+        this.centroids = centroids;
+        this.rowsBySubject = rowsBySubject;
+        this.subjectsWithRows = subjectsWithRows;
+    }
+
+    /**
+     * For {@link SimilarityMetric#COSINE} rows are normalised before averaging, so that every
+     * photo weighs the same regardless of its descriptor's magnitude.
+     */
+    public static SubjectCentroids of(Gallery gallery, SimilarityMetric metric) {
+        int dimension = gallery.getDimension();
+        int subjects = gallery.getSubjects().size();
+        float[] vectors = gallery.vectors();
+
+        int[] counts = new int[subjects];
+        for (int row = 0; row < gallery.size(); row++) {
+            counts[gallery.getSubjectIndex(row)]++;
+        }
+        int[][] rowsBySubject = new int[subjects][];
+        int withRows = 0;
+        for (int subject = 0; subject < subjects; subject++) {
+            rowsBySubject[subject] = new int[counts[subject]];
+            if (counts[subject] > 0) {
+                withRows++;
+            }
+        }
+
+        float[] centroids = new float[subjects * dimension];
+        int[] filled = new int[subjects];
+        for (int row = 0; row < gallery.size(); row++) {
+            int subject = gallery.getSubjectIndex(row);
+            rowsBySubject[subject][filled[subject]++] = row;
+            float weight = 1;
+            if (metric == SimilarityMetric.COSINE) {
+                float normSq = 0;
+                for (int i = 0; i < dimension; i++) {
+                    normSq += vectors[row * dimension + i] * vectors[row * dimension + i];
+                }
+                weight = normSq == 0 ? 0 : (float) (1 / Math.sqrt(normSq));
+            }
+            for (int i = 0; i < dimension; i++) {
+                centroids[subject * dimension + i] += weight * vectors[row * dimension + i] / counts[subject];
+            }
+        }
+
+        int[] subjectsWithRows = new int[withRows];
+        for (int subject = 0, i = 0; subject < subjects; subject++) {
+            if (counts[subject] > 0) {
+                subjectsWithRows[i++] = subject;
+            }
+        }
+        return new SubjectCentroids(gallery, centroids, rowsBySubject, subjectsWithRows);
+    }
+
+    /**
+     * Estimated heap taken by the centroids and the per-subject row lists.
+     */
+    public long sizeInBytes() {
+        long bytes = 4L * centroids.length + 4L * subjectsWithRows.length;
+        for (int[] rows : rowsBySubject) {
+            bytes += 16 + 4L * rows.length;
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns, for at most {@code k} subjects, the row of their best matching mark.
+     *
+     * @param expand number of best subjects by centroid whose marks are scored individually
+     */
+    public TopK search(float[] query, SimilarityMetric metric, int k, float minQuality, int expand) {
+        TopK bestSubjects = new TopK(Math.max(expand, k), Float.NEGATIVE_INFINITY);
+        for (int subject : subjectsWithRows) {
+            bestSubjects.offer(subject, metric.score(query, 0, centroids, subject * dimension, dimension));
+        }
+
+        TopK top = new TopK(k, minQuality);
+        for (int i = 0; i < bestSubjects.size(); i++) {
+            int bestRow = -1;
+            float bestScore = Float.NEGATIVE_INFINITY;
+            for (int row : rowsBySubject[bestSubjects.row(i)]) {
+                float score = gallery.score(query, row, metric);
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestRow = row;
+                }
+            }
+            top.offer(bestRow, bestScore);
+        }
+        return top;
+    }
+
+    public int subjectCount() {
+        return subjectsWithRows.length;
+    }
+}
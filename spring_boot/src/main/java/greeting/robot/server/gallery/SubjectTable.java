@@ -0,0 +1,128 @@
+package greeting.robot.server.gallery;
+
+import pl.edu.agh.biowiz.model.Subject;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Immutable, dense table of subjects resolved once at load time. Gallery rows refer to
+ * subjects by their index in this table, so the matching path never looks anything up by id.
+ */
+public final class SubjectTable {
+    /**
+     * Id, name string, array slots and id map entry of one subject, without the name's characters.
+     */
+    private static final int SUBJECT_OVERHEAD = 136;
+    private static final SubjectTable EMPTY = new SubjectTable(new UUID[0], new String[0]);
+
+    private final UUID[] ids;
+    private final String[] names;
+    private final Map<UUID, Integer> indexById;
+
+    public SubjectTable(UUID[] ids, String[] names) {
+        if (ids.length != names.length) {
+            throw new IllegalArgumentException(ids.length + " ids but " + names.length + " names");
+        }
+        this.ids = ids.clone();
+        this.names = names.clone();
+        this.indexById = new HashMap<>(ids.length * 2);
+        for (int i = 0; i < ids.length; i++) {
+            indexById.put(ids[i], i);
+        }
+    }
+
+    public static SubjectTable of(List<Subject> subjects) {
+        UUID[] ids = new UUID[subjects.size()];
+        String[] names = new String[subjects.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = subjects.get(i).getId();
+            names[i] = subjects.get(i).getName();
+        }
+        return new SubjectTable(ids, names);
+    }
+
+    public static SubjectTable empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Table with the subjects of this one, at unchanged indices, followed by those of {@code other}
+     * that are not present here.
+     */
+    public SubjectTable merge(SubjectTable other) {
+        UUID[] mergedIds = Arrays.copyOf(ids, ids.length + other.ids.length);
+        String[] mergedNames = Arrays.copyOf(names, names.length + other.names.length);
+        int size = ids.length;
+        for (int i = 0; i < other.ids.length; i++) {
+            if (indexOf(other.ids[i]) < 0) {
+                mergedIds[size] = other.ids[i];
+                mergedNames[size++] = other.names[i];
+            }
+        }
+        return new SubjectTable(Arrays.copyOf(mergedIds, size), Arrays.copyOf(mergedNames, size));
+    }
+
+    /**
+     * Table with the subjects of this one, except that those named like a subject of {@code known}
+     * take its id, so that both merge into one subject.
+     */
+    public SubjectTable adoptIds(SubjectTable known) {
+        Map<String, UUID> idByName = new HashMap<>(known.names.length * 2);
+        for (int i = known.names.length - 1; i >= 0; i--) {
+            idByName.put(known.names[i], known.ids[i]);
+        }
+        UUID[] adoptedIds = ids.clone();
+        for (int i = 0; i < adoptedIds.length; i++) {
+            adoptedIds[i] = idByName.getOrDefault(names[i], ids[i]);
+        }
+        return new SubjectTable(adoptedIds, names);
+    }
+
+    /**
+     * Id of the first subject called {@code name}, found by a scan as only enrollment asks for it.
+     */
+    public Optional<UUID> idOf(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return Optional.of(ids[i]);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @return index of the subject or -1 when it is not in the table
+     */
+    public int indexOf(UUID id) {
+        Integer index = indexById.get(id);
+        return index != null ? index : -1;
+    }
+
+    public UUID id(int index) {
+        return ids[index];
+    }
+
+    public String name(int index) {
+        return names[index];
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * Estimated heap taken by the table.
+     */
+    public long sizeInBytes() {
+        long bytes = (long) SUBJECT_OVERHEAD * names.length;
+        for (String name : names) {
+            bytes += 2L * name.length();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,127 @@
+package greeting.robot.server.gallery;
+
+/**
+ * Bounded selection of the best scoring gallery rows, kept as a min-heap in two primitive
+ * arrays so that a scan allocates nothing per row.
+ */
+public final class TopK {
+    private final int capacity;
+    private final float minScore;
+    private final int[] rows;
+    private final float[] scores;
+    private int size;
+    private boolean sorted;
+
+    /**
+     * @param minScore rows scoring below it are never kept
+     */
+    public TopK(int capacity, float minScore) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive, got " + capacity);
+        }
+        this.capacity = capacity;
+        this.minScore = minScore;
+        this.rows = new int[capacity];
+        this.scores = new float[capacity];
+    }
+
+    public void offer(int row, float score) {
+        if (score < minScore || Float.isNaN(score)) {
+            return;
+        }
+        if (size < capacity) {
+            rows[size] = row;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (score > scores[0]) {
+            rows[0] = row;
+            scores[0] = score;
+            siftDown(0, size);
+        }
+    }
+
+    /**
+     * Offers every row kept by {@code other}, used to combine the results of separate shards.
+     */
+    public void merge(TopK other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.rows[i], other.scores[i]);
+        }
+    }
+
+    /**
+     * Score a row has to beat to be kept, useful to skip work for hopeless candidates.
+     */
+    public float threshold() {
+        return size < capacity ? minScore : scores[0];
+    }
+
+    /**
+     * Orders the kept rows best first. Offering after this call is not allowed.
+     */
+    public TopK sort() {
+        if (!sorted) {
+            for (int end = size - 1; end > 0; end--) {
+                swap(0, end);
+                siftDown(0, end);
+            }
+            sorted = true;
+        }
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int row(int i) {
+        return rows[i];
+    }
+
+    public float score(int i) {
+        return scores[i];
+    }
+
+    public int[] rows() {
+        int[] copy = new int[size];
+        System.arraycopy(rows, 0, copy, 0, size);
+        return copy;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (scores[parent] <= scores[i]) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i, int end) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= end) {
+                return;
+            }
+            if (child + 1 < end && scores[child + 1] < scores[child]) {
+                child++;
+            }
+            if (scores[i] <= scores[child]) {
+                return;
+            }
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int row = rows[a];
+        rows[a] = rows[b];
+        rows[b] = row;
+        float score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+}
@@ -0,0 +1,81 @@
+package greeting.robot.server.metrics;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Named counters, gauges and latency histograms of the recognition server, rendered by
+ * {@link MetricsController}. Counters are {@link LongAdder}s and histograms are
+ * {@link LatencyHistogram}s, so updating them from request threads never contends.
+ */
+@Component
+public class MetricsRegistry {
+    private static final double[] QUANTILES = {0.5, 0.95, 0.99};
+
+    private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, DoubleSupplier> gauges = new ConcurrentSkipListMap<>();
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /**
+     * Registers a value sampled on every scrape, replacing any gauge of the same name. The name may
+     * carry labels, e.g. {@code gallery_version{gallery="main"}}.
+     */
+    public void gauge(String name, DoubleSupplier value) {
+        gauges.put(name, value);
+    }
+
+    public void removeGauge(String name) {
+        gauges.remove(name);
+    }
+
+    /**
+     * Histogram of durations, rendered in seconds as a summary with its p50, p95, p99 and max.
+     */
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    /**
+     * Writes every metric in the Prometheus text format.
+     */
+    public void writeTo(StringBuilder out) {
+        counters.forEach((name, counter) ->
+                out.append("# TYPE ").append(name).append(" counter\n")
+                        .append(name).append(' ').append(counter.sum()).append('\n'));
+        // gauges differing only in labels sort next to each other and share one TYPE line
+        String family = null;
+        for (Map.Entry<String, DoubleSupplier> gauge : gauges.entrySet()) {
+            String name = gauge.getKey();
+            int labels = name.indexOf('{');
+            String gaugeFamily = labels < 0 ? name : name.substring(0, labels);
+            if (!gaugeFamily.equals(family)) {
+                family = gaugeFamily;
+                out.append("# TYPE ").append(family).append(" gauge\n");
+            }
+            out.append(name).append(' ').append(gauge.getValue().getAsDouble()).append('\n');
+        }
+        histograms.forEach((name, histogram) -> {
+            out.append("# TYPE ").append(name).append(" summary\n");
+            for (double quantile : QUANTILES) {
+                out.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                        .append(seconds(histogram.quantileNanos(quantile))).append('\n');
+            }
+            out.append(name).append("_sum ").append(seconds(histogram.getSumNanos())).append('\n')
+                    .append(name).append("_count ").append(histogram.getCount()).append('\n')
+                    .append("# TYPE ").append(name).append("_max gauge\n")
+                    .append(name).append("_max ").append(seconds(histogram.getMaxNanos())).append('\n');
+        });
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+}
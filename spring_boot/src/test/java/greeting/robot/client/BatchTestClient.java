@@ -0,0 +1,46 @@
+package greeting.robot.client;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sends every image given as argument in one /uploadFiles request and prints each streamed
+ * result line with the time it arrived.
+ */
+public class BatchTestClient {
+    private static final String HOST = "192.168.2.x";
+
+    public static void main(String[] args) throws IOException {
+        CloseableHttpClient httpClient = HttpClients.createDefault();
+
+        HttpPost uploadFiles = new HttpPost("http://" + HOST + ":9999/uploadFiles");
+        MultipartEntityBuilder builder = MultipartEntityBuilder.create();
+        for (String fileName : args) {
+            File file = new File(fileName);
+            builder.addBinaryBody("files", file, ContentType.APPLICATION_OCTET_STREAM, file.getName());
+        }
+        uploadFiles.setEntity(builder.build());
+
+        long start = System.currentTimeMillis();
+        try (CloseableHttpResponse response = httpClient.execute(uploadFiles)) {
+            HttpEntity responseEntity = response.getEntity();
+            BufferedReader lines = new BufferedReader(
+                    new InputStreamReader(responseEntity.getContent(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = lines.readLine()) != null) {
+                System.out.println((System.currentTimeMillis() - start) + " ms: " + line);
+            }
+        }
+    }
+}
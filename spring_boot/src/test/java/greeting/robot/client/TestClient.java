@@ -1,5 +1,8 @@
 package greeting.robot.client;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import greeting.robot.server.metrics.LatencyHistogram;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
@@ -9,41 +12,245 @@ import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Load generator for {@code /uploadFile}, for sizing recognition servers, e.g. against a local one
+ * started with {@code --analyser.engine=stub}.
+ * <p>
+ * Usage: {@code TestClient [--url=http://localhost:9999/uploadFile] [--mode=closed|open]
+ * [--clients=1] [--rate=0] [--duration=0] [--warmup=0] [--requests=1] [image...]}
+ * <ul>
+ * <li>closed: {@code clients} threads each send their next request once the previous one is answered,
+ * paced to {@code rate} requests per second in total if it is given</li>
+ * <li>open: requests are due at a fixed {@code rate} whatever the server does, up to {@code clients}
+ * of them in flight</li>
+ * </ul>
+ * Without a duration {@code requests} are sent in total; the single default request prints its response.
+ * The images (default exampleFile.jpeg) are encoded once and sent in turn. Response time is
+ * measured from when a request was due by the schedule, not from when it could be sent, so a
+ * stalled server is charged for the requests it held back (coordinated omission); service time
+ * is measured from the actual send. Requests due during the warmup are sent but not recorded.
+ */
 public class TestClient {
     private static final String FILENAME = "exampleFile.jpeg";
-    private static final String HOST = "192.168.2.x";
-
-    public static void main(String[] args) throws IOException {
-        CloseableHttpClient httpClient = HttpClients.createDefault();
-
-        HttpPost uploadFile = new HttpPost("http://" + HOST + ":9999/uploadFile");
-        MultipartEntityBuilder builder = MultipartEntityBuilder.create();
-        builder.addTextBody("name", FILENAME, ContentType.TEXT_PLAIN);
-
-        BufferedImage bufferedImage = ImageIO.read(new File(FILENAME));
-        byte[] imageBytes;
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            ImageIO.write(bufferedImage, "jpeg", baos);
-            baos.flush();
-            imageBytes = baos.toByteArray();
-        }
-
-        builder.addBinaryBody(
-                "file",
-                imageBytes,
-                ContentType.APPLICATION_OCTET_STREAM,
-                FILENAME);
-
-        HttpEntity multipart = builder.build();
-        uploadFile.setEntity(multipart);
-        CloseableHttpResponse response = httpClient.execute(uploadFile);
-        HttpEntity responseEntity = response.getEntity();
-        System.out.println(IOUtils.toString(responseEntity.getContent()));
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final LatencyHistogram responseTimes = new LatencyHistogram();
+    private final LatencyHistogram serviceTimes = new LatencyHistogram();
+    private final LongAdder succeeded = new LongAdder();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final CloseableHttpClient httpClient;
+    private final String url;
+    private final List<HttpEntity> images;
+    private final boolean printResponse;
+    private volatile long recordFrom;
+
+    private TestClient(String url, List<HttpEntity> images, int clients, boolean printResponse) {
+        this.url = url;
+        this.images = images;
+        this.printResponse = printResponse;
+        httpClient = HttpClients.custom()
+                .setMaxConnTotal(clients)
+                .setMaxConnPerRoute(clients)
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        String url = "http://localhost:9999/uploadFile";
+        String mode = "closed";
+        int clients = 1;
+        double rate = 0;
+        double duration = 0;
+        double warmup = 0;
+        long requests = 1;
+        List<String> fileNames = new ArrayList<>();
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--url=")) {
+                url = value;
+            } else if (arg.startsWith("--mode=")) {
+                mode = value;
+            } else if (arg.startsWith("--clients=")) {
+                clients = Integer.parseInt(value);
+            } else if (arg.startsWith("--rate=")) {
+                rate = Double.parseDouble(value);
+            } else if (arg.startsWith("--duration=")) {
+                duration = Double.parseDouble(value);
+            } else if (arg.startsWith("--warmup=")) {
+                warmup = Double.parseDouble(value);
+            } else if (arg.startsWith("--requests=")) {
+                requests = Long.parseLong(value);
+            } else if (arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            } else {
+                fileNames.add(arg);
+            }
+        }
+        if (fileNames.isEmpty()) {
+            fileNames.add(FILENAME);
+        }
+        if (mode.equals("open") && rate <= 0) {
+            throw new IllegalArgumentException("Open loop needs --rate");
+        }
+
+        List<HttpEntity> images = new ArrayList<>();
+        for (String fileName : fileNames) {
+            File file = new File(fileName);
+            MultipartEntityBuilder builder = MultipartEntityBuilder.create();
+            builder.addTextBody("name", file.getName(), ContentType.TEXT_PLAIN);
+            builder.addBinaryBody("file", Files.readAllBytes(file.toPath()),
+                    ContentType.APPLICATION_OCTET_STREAM, file.getName());
+            images.add(builder.build());
+        }
+
+        TestClient client = new TestClient(url, images, clients,
+                duration <= 0 && requests == 1 && warmup <= 0);
+        long start = System.nanoTime();
+        client.recordFrom = start + seconds(warmup);
+        long end = duration > 0 ? client.recordFrom + seconds(duration) : Long.MAX_VALUE;
+        long limit = duration > 0 ? Long.MAX_VALUE : requests;
+        if (mode.equals("open")) {
+            client.runOpen(clients, rate, start, end, limit);
+        } else {
+            client.runClosed(clients, rate, start, end, limit);
+        }
+        client.report(mode, clients, rate, (System.nanoTime() - client.recordFrom) / 1e9);
+        client.httpClient.close();
+    }
+
+    /**
+     * @param rate total requests per second over all clients, 0 for back-to-back
+     */
+    private void runClosed(int clients, double rate, long start, long end, long limit) throws InterruptedException {
+        long interval = rate > 0 ? (long) (clients * 1e9 / rate) : 0;
+        AtomicLong sent = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            // clients start staggered, so paced ones do not send in lockstep
+            long first = start + (interval * c) / clients;
+            Thread thread = new Thread(() -> {
+                long due = first;
+                for (long n; (n = sent.getAndIncrement()) < limit; due += interval) {
+                    if (interval > 0) {
+                        sleepUntil(due);
+                    } else {
+                        due = System.nanoTime();
+                    }
+                    if (due >= end) {
+                        return;
+                    }
+                    send(n, due);
+                }
+            }, "client-" + c);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    private void runOpen(int maxInFlight, double rate, long start, long end, long limit) throws InterruptedException {
+        ExecutorService senders = Executors.newFixedThreadPool(maxInFlight);
+        double interval = 1e9 / rate;
+        for (long n = 0; n < limit; n++) {
+            long due = start + (long) (n * interval);
+            if (due >= end) {
+                break;
+            }
+            sleepUntil(due);
+            long request = n;
+            senders.execute(() -> send(request, due));
+        }
+        senders.shutdown();
+        senders.awaitTermination(1, TimeUnit.HOURS);
+    }
+
+    private void send(long request, long due) {
+        HttpPost uploadFile = new HttpPost(url);
+        uploadFile.setEntity(images.get((int) (request % images.size())));
+        long sentAt = System.nanoTime();
+        String outcome;
+        try (CloseableHttpResponse response = httpClient.execute(uploadFile)) {
+            String body = IOUtils.toString(response.getEntity().getContent(), StandardCharsets.UTF_8);
+            if (printResponse) {
+                System.out.println(body);
+            }
+            outcome = outcome(response.getStatusLine().getStatusCode(), body);
+        } catch (IOException e) {
+            outcome = e.getClass().getSimpleName();
+        }
+        long now = System.nanoTime();
+        if (due < recordFrom) {
+            return;
+        }
+        responseTimes.record(now - due);
+        serviceTimes.record(now - sentAt);
+        if (outcome == null) {
+            succeeded.increment();
+        } else {
+            errors.computeIfAbsent(outcome, key -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * @return null for results, otherwise what went wrong
+     */
+    private String outcome(int status, String body) {
+        if (status != 200) {
+            return "HTTP " + status;
+        }
+        try {
+            JsonNode json = objectMapper.readTree(body);
+            return json.isArray() ? null : "error: " + json.path("message").asText();
+        } catch (IOException e) {
+            return "unreadable response";
+        }
+    }
+
+    private void report(String mode, int clients, double rate, double seconds) {
+        long total = responseTimes.getCount();
+        System.out.printf("%s loop, %d clients, %s, %d requests in %.1f s%n", mode, clients,
+                rate > 0 ? String.format("%.1f req/s offered", rate) : "unpaced", total, seconds);
+        System.out.printf("throughput: %.1f req/s, %.1f results/s%n",
+                total / seconds, succeeded.sum() / seconds);
+        print("response time", responseTimes);
+        print("service time ", serviceTimes);
+        System.out.printf("succeeded: %d%n", succeeded.sum());
+        errors.entrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getValue().sum(), a.getValue().sum()))
+                .forEach(error -> System.out.printf("%8d  %s%n", error.getValue().sum(), error.getKey()));
+    }
+
+    private static void print(String name, LatencyHistogram histogram) {
+        System.out.printf("%s ms: p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, max %.2f%n", name,
+                histogram.quantileNanos(0.5) / 1e6, histogram.quantileNanos(0.9) / 1e6,
+                histogram.quantileNanos(0.99) / 1e6, histogram.quantileNanos(0.999) / 1e6,
+                histogram.getMaxNanos() / 1e6);
+    }
+
+    private static long seconds(double seconds) {
+        return (long) (seconds * 1e9);
+    }
+
+    private static void sleepUntil(long nanoTime) {
+        long remaining;
+        while ((remaining = nanoTime - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
     }
 }
@@ -0,0 +1,103 @@
+package greeting.robot.server;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class AnalyserPoolTest {
+
+    @Test
+    public void lendsEachInstanceToOneCallerAtATime() {
+        AtomicInteger created = new AtomicInteger();
+        AnalyserPool<Integer> pool = new AnalyserPool<>(2, false, 1000, created::incrementAndGet, analyser -> {
+        });
+
+        assertEquals(2, pool.size());
+        pool.execute(first -> {
+            assertEquals(1, pool.available());
+            int inner = pool.execute(second -> {
+                assertNotEquals(first, second);
+                assertEquals(0, pool.available());
+                return second;
+            });
+            assertEquals(1, pool.available());
+            return inner;
+        });
+        assertEquals(2, pool.available());
+    }
+
+    @Test
+    public void returnsTheInstanceWhenTheCallFails() {
+        AnalyserPool<String> pool = new AnalyserPool<>(1, false, 1000, () -> "analyser", analyser -> {
+        });
+        try {
+            pool.execute(analyser -> {
+                throw new IllegalStateException("failed");
+            });
+            fail();
+        } catch (IllegalStateException expected) {
+            assertEquals(1, pool.available());
+        }
+    }
+
+    @Test
+    public void rejectsCallersAfterTheBorrowTimeout() throws Exception {
+        AnalyserPool<String> pool = new AnalyserPool<>(1, false, 100, () -> "analyser", analyser -> {
+        });
+        CountDownLatch borrowed = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService holder = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> held = holder.submit(() -> pool.execute(analyser -> {
+                borrowed.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return analyser;
+            }));
+            assertTrue(borrowed.await(5, TimeUnit.SECONDS));
+
+            long start = System.nanoTime();
+            try {
+                pool.execute(analyser -> analyser);
+                fail("the only analyser is busy");
+            } catch (AnalyserBusyException expected) {
+                assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+            }
+
+            release.countDown();
+            assertEquals("analyser", held.get(5, TimeUnit.SECONDS));
+            assertEquals("analyser", pool.execute(analyser -> analyser));
+        } finally {
+            release.countDown();
+            holder.shutdownNow();
+        }
+    }
+
+    @Test
+    public void runsEveryCallOfAPinnedInstanceOnItsThread() {
+        List<String> threads = Collections.synchronizedList(new ArrayList<>());
+        AnalyserPool<String> pool = new AnalyserPool<>(1, true, 1000, () -> {
+            threads.add(Thread.currentThread().getName());
+            return "analyser";
+        }, analyser -> threads.add(Thread.currentThread().getName()));
+
+        pool.execute(analyser -> threads.add(Thread.currentThread().getName()));
+        pool.execute(analyser -> threads.add(Thread.currentThread().getName()));
+        pool.close(analyser -> threads.add(Thread.currentThread().getName()));
+
+        assertEquals(Collections.nCopies(5, "analyser-0"), threads);
+    }
+}
@@ -0,0 +1,128 @@
+package greeting.robot.server;
+
+import greeting.robot.server.metrics.MetricsRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import pl.edu.agh.biowiz.model.profile.PwFaceDescriptor;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AnalysisBatcherTest {
+    private final AnalyserService analyserService = mock(AnalyserService.class);
+    private final AnalyserProperties analyserProperties = new AnalyserProperties();
+    private final MetricsRegistry metricsRegistry = new MetricsRegistry();
+    private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch started = new CountDownLatch(1);
+    private volatile CountDownLatch blocked = new CountDownLatch(0);
+    private AnalysisBatcher batcher;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        AnalyserProperties.Batch batch = analyserProperties.getBatch();
+        batch.setEnabled(true);
+        batch.setMaxSize(3);
+        batch.setWindowMs(200);
+        when(analyserService.getPoolSize()).thenReturn(1);
+        when(analyserService.getDescriptorsFor(anyListOf(BufferedImage.class))).thenAnswer(invocation -> {
+            List<BufferedImage> images = (List<BufferedImage>) invocation.getArguments()[0];
+            batchSizes.add(images.size());
+            started.countDown();
+            blocked.await();
+            List<Optional<PwFaceDescriptor>> descriptors = new ArrayList<>();
+            images.forEach(image -> descriptors.add(Optional.empty()));
+            return descriptors;
+        });
+    }
+
+    @After
+    public void tearDown() {
+        blocked.countDown();
+        if (batcher != null) {
+            batcher.preDestroy();
+        }
+    }
+
+    @Test
+    public void batchesUpToTheMaxSizeThenUntilTheWindowCloses() throws Exception {
+        start();
+        List<CompletableFuture<Optional<PwFaceDescriptor>>> results = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            results.add(batcher.submit(image()));
+        }
+        for (CompletableFuture<Optional<PwFaceDescriptor>> result : results) {
+            assertFalse(result.get(5, TimeUnit.SECONDS).isPresent());
+        }
+        assertEquals(Arrays.asList(3, 2), batchSizes);
+    }
+
+    @Test
+    public void requestsWaitInTheQueueWhileEveryAnalyserIsBusy() throws Exception {
+        analyserProperties.getBatch().setMaxSize(1);
+        analyserProperties.getBatch().setQueueCapacity(2);
+        blocked = new CountDownLatch(1);
+        start();
+        CompletableFuture<Optional<PwFaceDescriptor>> first = batcher.submit(image());
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<Optional<PwFaceDescriptor>> second = batcher.submit(image());
+        CompletableFuture<Optional<PwFaceDescriptor>> third = batcher.submit(image());
+        Thread.sleep(100);
+        StringBuilder metrics = new StringBuilder();
+        metricsRegistry.writeTo(metrics);
+        assertTrue(metrics.toString(), metrics.toString().contains("analyser_batch_queue_depth 2"));
+        try {
+            batcher.submit(image());
+            fail("the queue is full while the only analyser is busy");
+        } catch (AnalyserBusyException expected) {
+            // rejected right away
+        }
+
+        blocked.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        third.get(5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList(1, 1, 1), batchSizes);
+    }
+
+    @Test
+    public void callersGiveUpAfterTheTimeout() throws Exception {
+        analyserProperties.getBatch().setTimeoutMs(100);
+        blocked = new CountDownLatch(1);
+        start();
+        long startedAt = System.nanoTime();
+        try {
+            batcher.getDescriptorFor(image());
+            fail("the analyser is blocked");
+        } catch (AnalyserBusyException expected) {
+            assertTrue(System.nanoTime() - startedAt >= TimeUnit.MILLISECONDS.toNanos(100));
+        }
+    }
+
+    private void start() {
+        batcher = new AnalysisBatcher();
+        ReflectionTestUtils.setField(batcher, "analyserService", analyserService);
+        ReflectionTestUtils.setField(batcher, "analyserProperties", analyserProperties);
+        ReflectionTestUtils.setField(batcher, "metricsRegistry", metricsRegistry);
+        batcher.postConstruct();
+    }
+
+    private static BufferedImage image() {
+        return new BufferedImage(4, 4, BufferedImage.TYPE_BYTE_GRAY);
+    }
+}
@@ -0,0 +1,412 @@
+package greeting.robot.server;
+
+import greeting.robot.data.api.Result;
+import greeting.robot.server.gallery.EnrollmentLog;
+import greeting.robot.server.gallery.Gallery;
+import greeting.robot.server.gallery.GalleryProperties;
+import greeting.robot.server.gallery.GalleryScanner;
+import greeting.robot.server.gallery.GallerySnapshot;
+import greeting.robot.server.gallery.SubjectTable;
+import greeting.robot.server.metrics.MetricsRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import pl.edu.agh.biowiz.model.profile.PwFaceDescriptor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DescriptorServiceTest {
+    private static final int DIMENSION = 32;
+    private static final int ROWS = 500;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final GalleryProperties galleryProperties = new GalleryProperties();
+    private final MetricsRegistry metricsRegistry = new MetricsRegistry();
+    private final GallerySnapshot gallerySnapshot = mock(GallerySnapshot.class);
+    private final Map<String, AtomicInteger> loads = new ConcurrentHashMap<>();
+    private final Map<String, CountDownLatch> blockedLoads = new ConcurrentHashMap<>();
+    private final Random random = new Random(7);
+    private final AtomicInteger projectWrites = new AtomicInteger();
+    private GalleryScanner galleryScanner;
+    private DescriptorService descriptorService;
+
+    @Before
+    public void setUp() throws IOException {
+        galleryProperties.setProjectsPath(folder.newFolder("projects").getPath());
+        galleryProperties.setEnrollmentPath(folder.getRoot().toPath().resolve("enrollments").toString());
+        galleryProperties.setDefaultGallery("a");
+        galleryProperties.setMetric("cosine");
+        galleryProperties.getReload().setEnabled(false);
+        for (String name : new String[]{"a", "b", "c", "d"}) {
+            writeProject(name, ROWS);
+        }
+        when(gallerySnapshot.read(anyString(), any(Path.class))).thenAnswer(invocation -> {
+            String name = (String) invocation.getArguments()[0];
+            int rows = Integer.parseInt(new String(Files.readAllBytes((Path) invocation.getArguments()[1])).trim());
+            loads.computeIfAbsent(name, key -> new AtomicInteger()).incrementAndGet();
+            CountDownLatch blocked = blockedLoads.get(name);
+            if (blocked != null) {
+                blocked.await();
+            }
+            return Optional.of(projectGallery(name, rows));
+        });
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        blockedLoads.values().forEach(CountDownLatch::countDown);
+        if (descriptorService != null) {
+            descriptorService.preDestroy();
+        }
+        if (galleryScanner != null) {
+            galleryScanner.preDestroy();
+        }
+    }
+
+    @Test
+    public void concurrentRequestsShareOneLoad() throws Exception {
+        start();
+        CountDownLatch release = new CountDownLatch(1);
+        blockedLoads.put("b", release);
+        ExecutorService requests = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> loading = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                loading.add(requests.submit(() -> {
+                    try {
+                        descriptorService.checkReady("b");
+                        return false;
+                    } catch (GalleryLoadingException e) {
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> answer : loading) {
+                assertTrue("answered while the load is blocked", answer.get(5, TimeUnit.SECONDS));
+            }
+            try {
+                descriptorService.identify("b", descriptor(new float[DIMENSION]), 1, 0);
+                fail("identify must not wait for the load");
+            } catch (GalleryLoadingException expected) {
+                // the upload worker is free for other galleries
+            }
+            assertEquals(1, descriptorService.identify("a", descriptor(projectRow("a", 3)), 1, 0).size());
+
+            release.countDown();
+            awaitReady("b");
+            assertEquals(1, loads.get("b").get());
+        } finally {
+            requests.shutdownNow();
+        }
+    }
+
+    @Test
+    public void unknownGalleriesAreRejectedBeforeLoading() throws IOException {
+        start();
+        try {
+            descriptorService.checkReady("missing");
+            fail();
+        } catch (IllegalArgumentException expected) {
+            assertFalse(loads.containsKey("missing"));
+        }
+        try {
+            descriptorService.checkReady("../a");
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // invalid name
+        }
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedGalleryFirst() throws Exception {
+        start();
+        awaitReady("b");
+        // a and b fit, a third does not
+        long galleryBytes = ReflectionTestUtils.<Long>invokeMethod(descriptorService, "residentBytes") / 2;
+        ReflectionTestUtils.setField(descriptorService, "maxBytes", galleryBytes * 5 / 2);
+
+        descriptorService.checkReady("a");
+        awaitReady("c");
+        awaitEvictions(1);
+
+        // b was used before a, and a stays loaded along with c
+        descriptorService.checkReady("a");
+        descriptorService.checkReady("c");
+        assertEquals(1, loads.get("a").get());
+        assertEquals(1, loads.get("c").get());
+
+        awaitReady("b");
+        assertEquals(2, loads.get("b").get());
+        awaitEvictions(2);
+        // now a was used before c, so a made room for b
+        descriptorService.checkReady("c");
+        try {
+            descriptorService.checkReady("a");
+            fail("a should have been dropped");
+        } catch (GalleryLoadingException expected) {
+            assertEquals(1, loads.get("c").get());
+        }
+    }
+
+    @Test
+    public void enrollmentsMadeWhileGalleriesAreEvictedAreKept() throws Exception {
+        start();
+        awaitReady("b");
+        long galleryBytes = ReflectionTestUtils.<Long>invokeMethod(descriptorService, "residentBytes") / 2;
+        ReflectionTestUtils.setField(descriptorService, "maxBytes", galleryBytes * 3 / 2);
+
+        int enrollments = 40;
+        float[][] enrolled = new float[enrollments][];
+        for (int i = 0; i < enrollments; i++) {
+            enrolled[i] = randomRow();
+        }
+        ExecutorService enroller = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> enrolling = enroller.submit(() -> {
+                for (int i = 0; i < enrollments; i++) {
+                    descriptorService.enroll("b", "Enrolled " + i, descriptor(enrolled[i]));
+                }
+                return null;
+            });
+            // only one gallery fits, so every other one loaded drops b
+            String[] others = {"c", "d"};
+            for (int round = 0; !enrolling.isDone(); round++) {
+                awaitReady(others[round % 2]);
+            }
+            enrolling.get(10, TimeUnit.SECONDS);
+        } finally {
+            enroller.shutdownNow();
+        }
+
+        assertTrue(metricsRegistry.counter("gallery_cache_evictions_total").sum() > 0);
+        awaitReady("b");
+        for (int i = 0; i < enrollments; i++) {
+            List<Result> results = descriptorService.identify("b", descriptor(enrolled[i]), 1, 0);
+            assertEquals("Enrolled " + i, results.get(0).getName());
+        }
+    }
+
+    @Test
+    public void movesTheEnrollmentLogFromBeforeNamedGalleries() throws IOException {
+        Path enrollments = folder.newFolder("enrollments").toPath();
+        Path legacy = folder.newFolder("legacy").toPath();
+        float[] row = randomRow();
+        try (EnrollmentLog log = new EnrollmentLog(legacy)) {
+            log.append("Legacy", row);
+        }
+        Files.move(legacy.resolve("descriptors.bin"), enrollments.resolve("descriptors.bin"));
+        Files.move(legacy.resolve("names.bin"), enrollments.resolve("names.bin"));
+
+        start();
+
+        assertFalse(Files.exists(enrollments.resolve("descriptors.bin")));
+        assertTrue(Files.exists(enrollments.resolve("a").resolve("descriptors.bin")));
+        assertEquals("Legacy", descriptorService.identify(null, descriptor(row), 1, 0).get(0).getName());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void refusesToStartWithTwoEnrollmentLogsForTheDefaultGallery() throws IOException {
+        Path enrollments = folder.newFolder("enrollments").toPath();
+        Files.createDirectories(enrollments.resolve("a"));
+        Files.write(enrollments.resolve("descriptors.bin"), new byte[0]);
+        Files.write(enrollments.resolve("a").resolve("descriptors.bin"), new byte[0]);
+
+        start();
+    }
+
+    @Test
+    public void enrollmentsSurviveTheRebuildSwap() throws Exception {
+        galleryProperties.getReload().setEnabled(true);
+        galleryProperties.getReload().setDebounceMs(50);
+        start();
+        float[] before = randomRow();
+        float[] during = randomRow();
+        descriptorService.enroll(null, "Before", descriptor(before));
+        CountDownLatch release = new CountDownLatch(1);
+        blockedLoads.put("a", release);
+
+        writeProject("a", ROWS + 10);
+        awaitLoads("a", 2);
+        // the rebuild reads the project outside the gallery lock
+        descriptorService.enroll(null, "During", descriptor(during));
+        release.countDown();
+        awaitRebuilds(1);
+
+        assertEquals("Before", descriptorService.identify(null, descriptor(before), 1, 0).get(0).getName());
+        assertEquals("During", descriptorService.identify(null, descriptor(during), 1, 0).get(0).getName());
+        assertEquals("a " + (ROWS + 5),
+                descriptorService.identify(null, descriptor(projectRow("a", ROWS + 5)), 1, 0).get(0).getName());
+        assertEquals(2, loads.get("a").get());
+    }
+
+    @Test
+    public void rebuiltGalleriesCountAgainstTheBudget() throws Exception {
+        galleryProperties.getReload().setEnabled(true);
+        galleryProperties.getReload().setDebounceMs(50);
+        start();
+        awaitReady("b");
+        long galleryBytes = ReflectionTestUtils.<Long>invokeMethod(descriptorService, "residentBytes") / 2;
+        ReflectionTestUtils.setField(descriptorService, "maxBytes", galleryBytes * 5 / 2);
+
+        writeProject("a", 2 * ROWS);
+        awaitRebuilds(1);
+        awaitEvictions(1);
+
+        descriptorService.checkReady("a");
+        try {
+            descriptorService.checkReady("b");
+            fail("b should have made room for the grown a");
+        } catch (GalleryLoadingException expected) {
+            assertEquals(2, loads.get("a").get());
+        }
+    }
+
+    @Test
+    public void droppedGalleriesAreNoLongerWatched() throws Exception {
+        galleryProperties.getReload().setEnabled(true);
+        galleryProperties.getReload().setDebounceMs(50);
+        start();
+        long galleryBytes = ReflectionTestUtils.<Long>invokeMethod(descriptorService, "residentBytes");
+        ReflectionTestUtils.setField(descriptorService, "maxBytes", galleryBytes * 3 / 2);
+        awaitReady("b");
+        awaitEvictions(1);
+
+        writeProject("a", ROWS + 1);
+        writeProject("b", ROWS + 1);
+        awaitRebuilds(1);
+        Thread.sleep(200);
+
+        assertEquals(1, metricsRegistry.counter("gallery_rebuilds_total").sum());
+        assertEquals(1, loads.get("a").get());
+        assertEquals(2, loads.get("b").get());
+    }
+
+    private void start() throws IOException {
+        galleryScanner = GalleryScanner.create(galleryProperties);
+        descriptorService = new DescriptorService();
+        ReflectionTestUtils.setField(descriptorService, "analyserService", mock(AnalyserService.class));
+        ReflectionTestUtils.setField(descriptorService, "galleryProperties", galleryProperties);
+        ReflectionTestUtils.setField(descriptorService, "galleryScanner", galleryScanner);
+        ReflectionTestUtils.setField(descriptorService, "gallerySnapshot", gallerySnapshot);
+        ReflectionTestUtils.setField(descriptorService, "metricsRegistry", metricsRegistry);
+        descriptorService.postConstruct();
+    }
+
+    /**
+     * The project file only holds the number of rows of its gallery, padded so that every write
+     * changes its size whatever the timestamp resolution.
+     */
+    private void writeProject(String name, int rows) throws IOException {
+        Path project = folder.getRoot().toPath().resolve("projects").resolve(name).resolve("project.biow");
+        Files.createDirectories(project.getParent());
+        char[] padding = new char[projectWrites.incrementAndGet()];
+        Arrays.fill(padding, ' ');
+        Files.write(project, (rows + new String(padding)).getBytes());
+    }
+
+    /**
+     * Polls until the gallery is loaded, as a client retrying on 503 would.
+     */
+    private void awaitReady(String name) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (true) {
+            try {
+                descriptorService.checkReady(name);
+                return;
+            } catch (GalleryLoadingException e) {
+                assertTrue("gallery " + name + " not loaded in time", System.currentTimeMillis() < deadline);
+                Thread.sleep(5);
+            }
+        }
+    }
+
+    private void awaitLoads(String name, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (loads.getOrDefault(name, new AtomicInteger()).get() < count) {
+            assertTrue("gallery " + name + " not read in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private void awaitRebuilds(long rebuilds) throws InterruptedException {
+        LongAdder counter = metricsRegistry.counter("gallery_rebuilds_total");
+        long deadline = System.currentTimeMillis() + 10000;
+        while (counter.sum() < rebuilds) {
+            assertTrue("no rebuild in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private void awaitEvictions(long evictions) throws InterruptedException {
+        LongAdder counter = metricsRegistry.counter("gallery_cache_evictions_total");
+        long deadline = System.currentTimeMillis() + 10000;
+        while (counter.sum() < evictions) {
+            assertTrue("no eviction in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Same leading rows for the same name on every load, however many there are.
+     */
+    private static Gallery projectGallery(String name, int size) {
+        Random rows = new Random(name.hashCode());
+        float[] vectors = new float[size * DIMENSION];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = (float) rows.nextGaussian();
+        }
+        int[] subjectIndices = new int[size];
+        UUID[] ids = new UUID[size];
+        String[] names = new String[size];
+        for (int i = 0; i < size; i++) {
+            subjectIndices[i] = i;
+            ids[i] = new UUID(name.hashCode(), i);
+            names[i] = name + " " + i;
+        }
+        return Gallery.of(DIMENSION, vectors, subjectIndices, new SubjectTable(ids, names));
+    }
+
+    private static float[] projectRow(String name, int row) {
+        return projectGallery(name, row + 1).row(row);
+    }
+
+    private float[] randomRow() {
+        float[] row = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            row[i] = (float) random.nextGaussian();
+        }
+        return row;
+    }
+
+    private static PwFaceDescriptor descriptor(float[] vector) {
+        return new PwFaceDescriptor(vector, 1);
+    }
+}
@@ -0,0 +1,94 @@
+package greeting.robot.server;
+
+import greeting.robot.data.api.ImageResult;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ImageBatchTest {
+
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(1));
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void identifiesEveryImageThroughASmallQueue() throws InterruptedException {
+        List<ImageResult> results = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1);
+        ImageBatch batch = new ImageBatch(executor, 40, 4, index -> ImageResult.of(index, "f" + index,
+                Collections.emptyList()), results::add, done::countDown);
+
+        batch.start();
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(40, results.size());
+        assertTrue(results.stream().allMatch(result -> result.getError() == null));
+        assertEquals(40, results.stream().mapToInt(ImageResult::getIndex).distinct().count());
+    }
+
+    @Test
+    public void neverRunsMoreThanTheParallelism() throws InterruptedException {
+        ThreadPoolExecutor wide = new ThreadPoolExecutor(8, 8, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(8));
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(1);
+        try {
+            new ImageBatch(wide, 30, 2, index -> {
+                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                return ImageResult.of(index, null, Collections.emptyList());
+            }, result -> { }, done::countDown).start();
+
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertTrue("peak " + peak.get(), peak.get() <= 2);
+        } finally {
+            wide.shutdownNow();
+        }
+    }
+
+    @Test
+    public void completesAnEmptyBatchRightAway() {
+        AtomicInteger done = new AtomicInteger();
+        new ImageBatch(executor, 0, 4, index -> null, result -> fail(), done::incrementAndGet).start();
+        assertEquals(1, done.get());
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void rejectsTheBatchWhenNoImageIsAdmitted() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        executor.execute(() -> { });
+        try {
+            new ImageBatch(executor, 3, 2, index -> null, result -> fail(), () -> fail()).start();
+        } finally {
+            release.countDown();
+        }
+    }
+}
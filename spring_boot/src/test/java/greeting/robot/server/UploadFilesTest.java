@@ -0,0 +1,99 @@
+package greeting.robot.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import greeting.robot.data.api.ImageResult;
+import greeting.robot.data.api.Result;
+import greeting.robot.server.metrics.MetricsRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMultipartHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.fileUpload;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+public class UploadFilesTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final UploadProperties uploadProperties = new UploadProperties();
+    private final UploadExecutor uploadExecutor = new UploadExecutor();
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() throws Exception {
+        uploadProperties.setWorkers(2);
+        uploadProperties.setQueueCapacity(1);
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+        ReflectionTestUtils.setField(uploadExecutor, "uploadProperties", uploadProperties);
+        ReflectionTestUtils.setField(uploadExecutor, "metricsRegistry", metricsRegistry);
+        uploadExecutor.postConstruct();
+
+        ImageDecoder imageDecoder = mock(ImageDecoder.class);
+        when(imageDecoder.decode(any(byte[].class)))
+                .thenReturn(DecodedImage.of(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB)));
+        RecognitionService recognitionService = mock(RecognitionService.class);
+        when(recognitionService.identify(anyString(), any(DecodedImage.class), any(FaceRegion.class), anyInt(),
+                any(Float.class)))
+                .thenReturn(Optional.of(Collections.singletonList(Result.of("Kowalski", 0.9f))));
+
+        HelloController controller = new HelloController();
+        ReflectionTestUtils.setField(controller, "recognitionService", recognitionService);
+        ReflectionTestUtils.setField(controller, "descriptorService", mock(DescriptorService.class));
+        ReflectionTestUtils.setField(controller, "imageDecoder", imageDecoder);
+        ReflectionTestUtils.setField(controller, "uploadExecutor", uploadExecutor);
+        ReflectionTestUtils.setField(controller, "uploadProperties", uploadProperties);
+        ReflectionTestUtils.setField(controller, "metricsRegistry", metricsRegistry);
+        controller.postConstruct();
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @After
+    public void tearDown() {
+        uploadExecutor.preDestroy();
+    }
+
+    @Test
+    public void streamsOneLinePerImageBeyondTheQueueCapacity() throws Exception {
+        int images = 50;
+        MockMultipartHttpServletRequestBuilder request = fileUpload("/uploadFiles");
+        for (int i = 0; i < images; i++) {
+            request.file(new MockMultipartFile("files", "face" + i + ".jpg", "image/jpeg", new byte[]{(byte) i}));
+        }
+        MvcResult started = mockMvc.perform(request.param("gallery", "default"))
+                .andExpect(request().asyncStarted())
+                .andExpect(header().string("Content-Type", "application/x-ndjson"))
+                .andReturn();
+        started.getAsyncResult(10000);
+
+        mockMvc.perform(asyncDispatch(started)).andExpect(status().isOk());
+        String body = started.getResponse().getContentAsString();
+
+        String[] lines = body.split("\n");
+        assertEquals(images, lines.length);
+        Set<Integer> indices = new TreeSet<>();
+        for (String line : lines) {
+            ImageResult result = objectMapper.readValue(line, ImageResult.class);
+            assertNull(line, result.getError());
+            assertEquals("face" + result.getIndex() + ".jpg", result.getFileName());
+            assertEquals("Kowalski", result.getResults().get(0).getName());
+            indices.add(result.getIndex());
+        }
+        assertEquals(images, indices.size());
+    }
+}
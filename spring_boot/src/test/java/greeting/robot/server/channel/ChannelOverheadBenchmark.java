@@ -0,0 +1,138 @@
+package greeting.robot.server.channel;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import greeting.robot.data.api.ChannelRequest;
+import greeting.robot.data.api.ChannelResponse;
+import greeting.robot.data.api.Result;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loopback comparison of the per-message cost of the binary channel and of a multipart HTTP
+ * upload answered with JSON, as {@code RestClient} does it. Both servers answer instantly with the
+ * same results, so only transport, framing and parsing are measured.
+ * <p>
+ * Usage: {@code ChannelOverheadBenchmark [messages] [payloadBytes]}
+ */
+public class ChannelOverheadBenchmark {
+    private static final List<Result> RESULTS = Arrays.asList(
+            Result.of("Jan Kowalski", 0.93f), Result.of("Anna Nowak", 0.71f), Result.of("Piotr Wiśniewski", 0.64f));
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int payloadBytes = args.length > 1 ? Integer.parseInt(args[1]) : 112 * 112 * 3;
+        byte[] payload = new byte[payloadBytes];
+        new Random(1).nextBytes(payload);
+        ObjectMapper objectMapper = new ObjectMapper();
+        byte[] json = objectMapper.writeValueAsBytes(RESULTS);
+
+        // without it the JDK server's separate header and body writes wait for delayed ACKs
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        ExecutorService workers = Executors.newFixedThreadPool(4);
+        HttpServer httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        httpServer.createContext("/uploadFile", exchange -> {
+            IOUtils.toByteArray(exchange.getRequestBody());
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, json.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(json);
+            }
+        });
+        httpServer.setExecutor(workers);
+        httpServer.start();
+        ChannelProperties channelProperties = new ChannelProperties();
+        channelProperties.setPort(0);
+        ChannelServer channelServer = new ChannelServer(channelProperties, workers,
+                request -> ChannelResponse.ok(request.getRequestId(), RESULTS));
+
+        String url = "http://127.0.0.1:" + httpServer.getAddress().getPort() + "/uploadFile";
+        try (CloseableHttpClient httpClient = HttpClients.createDefault();
+             Socket socket = new Socket("127.0.0.1", channelServer.getPort())) {
+            socket.setTcpNoDelay(true);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+            for (int round = 0; round < 2; round++) {
+                boolean report = round == 1;
+                long start = System.nanoTime();
+                for (int i = 0; i < messages; i++) {
+                    HttpPost upload = new HttpPost(url);
+                    upload.setEntity(MultipartEntityBuilder.create()
+                            .addBinaryBody("file", payload, ContentType.APPLICATION_OCTET_STREAM, "face.raw")
+                            .build());
+                    try (CloseableHttpResponse response = httpClient.execute(upload)) {
+                        String text = IOUtils.toString(response.getEntity().getContent(), StandardCharsets.UTF_8);
+                        check(objectMapper.readValue(text, Result[].class).length);
+                    }
+                }
+                print(report, "multipart + JSON", messages, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                for (int i = 0; i < messages; i++) {
+                    ChannelRequest.raw(i, payload, 112, payloadBytes / 336, 3).writeTo(out);
+                    out.flush();
+                    ChannelResponse response = ChannelResponse.readFrom(in);
+                    if (response.getRequestId() != i) {
+                        throw new IllegalStateException("Response " + response.getRequestId() + " to request " + i);
+                    }
+                    check(response.getResults().size());
+                }
+                print(report, "channel, one in flight", messages, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                int window = 16;
+                int received = 0;
+                for (int i = 0; i < messages; i++) {
+                    ChannelRequest.raw(i, payload, 112, payloadBytes / 336, 3).writeTo(out);
+                    if (i - received >= window - 1) {
+                        out.flush();
+                        check(ChannelResponse.readFrom(in).getResults().size());
+                        received++;
+                    }
+                }
+                out.flush();
+                for (; received < messages; received++) {
+                    check(ChannelResponse.readFrom(in).getResults().size());
+                }
+                print(report, "channel, " + window + " in flight", messages, System.nanoTime() - start);
+            }
+        } finally {
+            channelServer.close();
+            httpServer.stop(0);
+            workers.shutdown();
+        }
+    }
+
+    private static void check(int results) {
+        if (results != RESULTS.size()) {
+            throw new IllegalStateException(results + " results instead of " + RESULTS.size());
+        }
+    }
+
+    private static void print(boolean report, String path, int messages, long nanos) throws IOException {
+        if (report) {
+            System.out.printf("%-24s %8.1f us/message%n", path, nanos / 1e3 / messages);
+        }
+    }
+}
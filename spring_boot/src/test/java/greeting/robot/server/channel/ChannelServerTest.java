@@ -0,0 +1,163 @@
+package greeting.robot.server.channel;
+
+import greeting.robot.data.api.ChannelRequest;
+import greeting.robot.data.api.ChannelResponse;
+import greeting.robot.data.api.Result;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ChannelServerTest {
+
+    private final ChannelProperties properties = new ChannelProperties();
+    private final ExecutorService workers = Executors.newFixedThreadPool(4);
+    private volatile long handleMillis;
+    private volatile CountDownLatch blocked = new CountDownLatch(0);
+    private final AtomicInteger handled = new AtomicInteger();
+    private ChannelServer server;
+
+    @Before
+    public void setUp() {
+        properties.setPort(0);
+        properties.setMaxFrameLength(1024);
+        properties.setMaxConnections(2);
+        properties.setReadTimeoutMs(200);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (server != null) {
+            server.close();
+        }
+        workers.shutdownNow();
+    }
+
+    @Test
+    public void answersRequestsWithinTheFrameLimit() throws IOException {
+        start();
+        try (Socket socket = connect()) {
+            send(socket, ChannelRequest.encoded(7, new byte[512]));
+            ChannelResponse response = receive(socket);
+            assertEquals(7, response.getRequestId());
+            assertEquals("Kowalski", response.getResults().get(0).getName());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void closesTheConnectionOnAnOversizedFrame() throws IOException {
+        start();
+        try (Socket socket = connect()) {
+            send(socket, ChannelRequest.encoded(1, new byte[2048]));
+            receive(socket);
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void refusesConnectionsBeyondTheLimit() throws Exception {
+        start();
+        try (Socket first = connect(); Socket second = connect()) {
+            send(first, ChannelRequest.encoded(1, new byte[0]));
+            send(second, ChannelRequest.encoded(2, new byte[0]));
+            receive(first);
+            receive(second);
+            try (Socket third = connect()) {
+                receive(third);
+            }
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void closesIdleConnections() throws IOException {
+        start();
+        try (Socket socket = connect()) {
+            receive(socket);
+        }
+    }
+
+    @Test
+    public void keepsConnectionsWaitingForResponsesOpen() throws IOException {
+        handleMillis = 3 * properties.getReadTimeoutMs();
+        start();
+        try (Socket socket = connect()) {
+            send(socket, ChannelRequest.encoded(3, new byte[0]));
+            assertEquals(3, receive(socket).getRequestId());
+        }
+    }
+
+    @Test
+    public void stopsReadingAConnectionOwingTooManyResponses() throws Exception {
+        properties.setMaxInFlight(2);
+        properties.setReadTimeoutMs(5000);
+        blocked = new CountDownLatch(1);
+        start();
+        try (Socket socket = connect()) {
+            for (int i = 0; i < 10; i++) {
+                send(socket, ChannelRequest.encoded(i, new byte[0]));
+            }
+            Thread.sleep(200);
+            assertEquals(2, handled.get());
+
+            blocked.countDown();
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            Set<Long> answered = new HashSet<>();
+            for (int i = 0; i < 10; i++) {
+                answered.add(ChannelResponse.readFrom(in).getRequestId());
+            }
+            assertEquals(10, answered.size());
+            assertEquals(10, handled.get());
+        }
+    }
+
+    private void start() throws IOException {
+        server = new ChannelServer(properties, workers, request -> {
+            handled.incrementAndGet();
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (handleMillis > 0) {
+                try {
+                    Thread.sleep(handleMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return ChannelResponse.ok(request.getRequestId(),
+                    Collections.singletonList(Result.of("Kowalski", 0.9f)));
+        });
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket("127.0.0.1", server.getPort());
+        socket.setSoTimeout(5000);
+        return socket;
+    }
+
+    private static void send(Socket socket, ChannelRequest request) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        request.writeTo(out);
+        out.flush();
+    }
+
+    private static ChannelResponse receive(Socket socket) throws IOException {
+        return ChannelResponse.readFrom(new DataInputStream(new BufferedInputStream(socket.getInputStream())));
+    }
+}
@@ -0,0 +1,119 @@
+package greeting.robot.server.gallery;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class EnrollmentLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recordsSurviveReopening() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        UUID alice;
+        try (EnrollmentLog log = new EnrollmentLog(directory)) {
+            alice = log.append("Alice", new float[]{1, 2, 3});
+            log.append("Bob", new float[]{4, 5, 6});
+            log.append("Alice", new float[]{7, 8, 9});
+        }
+
+        Gallery gallery;
+        try (EnrollmentLog log = new EnrollmentLog(directory)) {
+            gallery = log.read();
+        }
+
+        assertEquals(3, gallery.size());
+        assertEquals(3, gallery.getDimension());
+        assertEquals(2, gallery.getSubjects().size());
+        assertArrayEquals(new float[]{1, 2, 3, 4, 5, 6, 7, 8, 9}, gallery.vectors(), 0);
+        assertEquals("Alice", gallery.getSubjectName(0));
+        assertEquals("Bob", gallery.getSubjectName(1));
+        assertEquals(gallery.getSubjectIndex(0), gallery.getSubjectIndex(2));
+        assertEquals(alice, gallery.getSubjects().id(gallery.getSubjectIndex(0)));
+    }
+
+    @Test
+    public void tornRecordIsDroppedAndOverwritten() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (EnrollmentLog log = new EnrollmentLog(directory)) {
+            log.append("Alice", new float[]{1, 2});
+        }
+        appendGarbage(directory.resolve("descriptors.bin"), 13);
+
+        try (EnrollmentLog log = new EnrollmentLog(directory)) {
+            assertEquals(1, log.read().size());
+            log.append("Bob", new float[]{3, 4});
+            Gallery gallery = log.read();
+            assertEquals(2, gallery.size());
+            assertArrayEquals(new float[]{1, 2, 3, 4}, gallery.vectors(), 0);
+            assertEquals("Bob", gallery.getSubjectName(1));
+        }
+    }
+
+    @Test
+    public void tornNameIsDroppedAndOverwritten() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (EnrollmentLog log = new EnrollmentLog(directory)) {
+            log.append("Alice", new float[]{1, 2});
+        }
+        // length prefix promising more bytes than were written
+        appendGarbage(directory.resolve("names.bin"), 4);
+
+        try (EnrollmentLog log = new EnrollmentLog(directory)) {
+            log.append("Bob", new float[]{3, 4});
+        }
+        try (EnrollmentLog log = new EnrollmentLog(directory)) {
+            Gallery gallery = log.read();
+            assertEquals("Alice", gallery.getSubjectName(0));
+            assertEquals("Bob", gallery.getSubjectName(1));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDescriptorOfAnotherDimension() throws IOException {
+        try (EnrollmentLog log = new EnrollmentLog(folder.getRoot().toPath())) {
+            log.append("Alice", new float[]{1, 2});
+            log.append("Bob", new float[]{1, 2, 3});
+        }
+    }
+
+    @Test
+    public void enrolledSubjectJoinsProjectSubjectOfSameName() throws IOException {
+        UUID projectAlice = UUID.randomUUID();
+        Gallery project = Gallery.of(2, new float[]{0, 1}, new int[]{0},
+                new SubjectTable(new UUID[]{projectAlice}, new String[]{"Alice"}));
+        Gallery enrolled;
+        try (EnrollmentLog log = new EnrollmentLog(folder.getRoot().toPath())) {
+            log.append("Alice", new float[]{1, 0});
+            log.append("Carol", new float[]{1, 1});
+            enrolled = log.read();
+        }
+
+        Gallery merged = project.concat(enrolled.adoptSubjectIds(project.getSubjects()));
+
+        assertEquals(2, merged.getSubjects().size());
+        assertEquals(merged.getSubjectIndex(0), merged.getSubjectIndex(1));
+        assertEquals(projectAlice, merged.getSubjects().id(merged.getSubjectIndex(1)));
+        assertEquals(EnrollmentLog.subjectId("Carol"), merged.getSubjects().id(merged.getSubjectIndex(2)));
+    }
+
+    private static void appendGarbage(Path file, int length) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer garbage = ByteBuffer.allocate(length);
+            garbage.putInt(0, 1000);
+            channel.write(garbage);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package greeting.robot.server.gallery;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+public class GalleryIndexRecallTest {
+    private static final int DIMENSION = 64;
+    private static final int SUBJECTS = 200;
+    private static final int MARKS_PER_SUBJECT = 10;
+    private static final int QUERIES = 100;
+    private static final int K = 10;
+    private static final SimilarityMetric METRIC = SimilarityMetric.COSINE;
+
+    private static Gallery gallery;
+    private static float[][] queries;
+
+    @BeforeClass
+    public static void createSyntheticGallery() {
+        Random random = new Random(7);
+        float[][] centers = new float[SUBJECTS][];
+        for (int subject = 0; subject < SUBJECTS; subject++) {
+            centers[subject] = noisy(new float[DIMENSION], 1, random);
+        }
+
+        int size = SUBJECTS * MARKS_PER_SUBJECT;
+        float[] vectors = new float[size * DIMENSION];
+        int[] subjectIndices = new int[size];
+        for (int row = 0; row < size; row++) {
+            int subject = row % SUBJECTS;
+            System.arraycopy(noisy(centers[subject], 0.3f, random), 0, vectors, row * DIMENSION, DIMENSION);
+            subjectIndices[row] = subject;
+        }
+        gallery = Gallery.of(DIMENSION, vectors, subjectIndices, SubjectTable.empty());
+
+        queries = new float[QUERIES][];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = noisy(centers[random.nextInt(SUBJECTS)], 0.3f, random);
+        }
+    }
+
+    @Test
+    public void hnswRecall() {
+        GalleryIndex index = new HnswIndex(gallery, METRIC, 16, 100, 64);
+        double recall = recall(index);
+        assertTrue("HNSW recall@" + K + " = " + recall, recall >= 0.95);
+    }
+
+    @Test
+    public void ivfRecall() {
+        GalleryIndex index = new IvfIndex(gallery, METRIC, 0, 8, 10);
+        double recall = recall(index);
+        assertTrue("IVF recall@" + K + " = " + recall, recall >= 0.9);
+    }
+
+    @Test
+    public void ivfProbingEveryListIsExact() {
+        GalleryIndex index = new IvfIndex(gallery, METRIC, 16, 16, 5);
+        double recall = recall(index);
+        assertTrue("IVF recall@" + K + " = " + recall, recall == 1.0);
+    }
+
+    /**
+     * Fraction of the exact top K found by the index, averaged over all queries.
+     */
+    private static double recall(GalleryIndex index) {
+        int hits = 0;
+        float[] scores = new float[gallery.size()];
+        for (float[] query : queries) {
+            gallery.score(query, METRIC, scores);
+            float[] sorted = scores.clone();
+            Arrays.sort(sorted);
+            float threshold = sorted[sorted.length - K];
+
+            for (int row : index.search(query, K)) {
+                if (scores[row] >= threshold) {
+                    hits++;
+                }
+            }
+        }
+        return (double) hits / (QUERIES * K);
+    }
+
+    private static float[] noisy(float[] center, float sigma, Random random) {
+        float[] vector = new float[center.length];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = center[i] + (float) random.nextGaussian() * sigma;
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,107 @@
+package greeting.robot.server.gallery;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class GallerySnapshotTest {
+    private static final UUID ALICE = UUID.randomUUID();
+    private static final UUID BOB = UUID.randomUUID();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final GalleryProperties galleryProperties = new GalleryProperties();
+    private final GallerySnapshot snapshot = new GallerySnapshot();
+    private final Gallery gallery = Gallery.of(3, new float[]{1, 2, 3, 4, 5, 6, 7, 8, 9}, new int[]{1, 0, 1},
+            new SubjectTable(new UUID[]{ALICE, BOB}, new String[]{"Alice", "Bo\u017Cena"}));
+    private Path project;
+
+    @Before
+    public void setUp() throws IOException {
+        galleryProperties.setSnapshotPath(folder.getRoot().toPath().resolve("snapshots").toString());
+        ReflectionTestUtils.setField(snapshot, "galleryProperties", galleryProperties);
+        project = folder.newFile("main.pwp").toPath();
+        Files.write(project, new byte[]{1, 2, 3});
+    }
+
+    @Test
+    public void readsWhatWasWritten() throws IOException {
+        write();
+
+        Gallery read = snapshot.read("main", project).get();
+
+        assertEquals(3, read.size());
+        assertEquals(3, read.getDimension());
+        assertArrayEquals(gallery.vectors(), read.vectors(), 0);
+        assertEquals(2, read.getSubjects().size());
+        assertEquals("Bo\u017Cena", read.getSubjectName(0));
+        assertEquals("Alice", read.getSubjectName(1));
+        assertEquals(BOB, read.getSubjects().id(read.getSubjectIndex(2)));
+    }
+
+    @Test
+    public void ignoresASnapshotOfAnotherProjectSize() throws IOException {
+        write();
+        FileTime modified = Files.getLastModifiedTime(project);
+        Files.write(project, new byte[]{1, 2, 3, 4});
+        Files.setLastModifiedTime(project, modified);
+
+        assertFalse(snapshot.read("main", project).isPresent());
+    }
+
+    @Test
+    public void ignoresASnapshotOfAnotherProjectModificationTime() throws IOException {
+        write();
+        Files.setLastModifiedTime(project, FileTime.fromMillis(Files.getLastModifiedTime(project).toMillis() + 1000));
+
+        assertFalse(snapshot.read("main", project).isPresent());
+    }
+
+    @Test
+    public void ignoresTruncatedSnapshots() throws IOException {
+        write();
+        Path path = folder.getRoot().toPath().resolve("snapshots").resolve("main.snapshot");
+        long size = Files.size(path);
+        for (long truncated : new long[]{size - 1, size - 20, 45, 20, 0}) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(truncated);
+            }
+
+            assertFalse("truncated to " + truncated, snapshot.read("main", project).isPresent());
+        }
+    }
+
+    @Test
+    public void ignoresSnapshotsOfAnotherFormat() throws IOException {
+        write();
+        Path path = folder.getRoot().toPath().resolve("snapshots").resolve("main.snapshot");
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[0] ^= 1;
+        Files.write(path, bytes);
+
+        assertFalse(snapshot.read("main", project).isPresent());
+    }
+
+    @Test
+    public void nothingToReadWithoutASnapshot() throws IOException {
+        assertEquals(Optional.empty(), snapshot.read("main", project));
+    }
+
+    private void write() throws IOException {
+        snapshot.write("main", project, Files.size(project), Files.getLastModifiedTime(project).toMillis(), gallery);
+    }
+}
@@ -0,0 +1,84 @@
+package greeting.robot.server.gallery;
+
+import org.junit.Test;
+import pl.edu.agh.biowiz.model.facedata.PwFaceData;
+import pl.edu.agh.biowiz.model.mark.FaceMark;
+import pl.edu.agh.biowiz.model.profile.PwFaceDescriptor;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class GalleryTest {
+    private static final UUID ALICE = UUID.randomUUID();
+    private static final UUID BOB = UUID.randomUUID();
+    private static final SubjectTable SUBJECTS = new SubjectTable(new UUID[]{ALICE, BOB}, new String[]{"Alice", "Bob"});
+
+    @Test
+    public void packsMarksRowByRow() {
+        Gallery gallery = Gallery.of(Arrays.asList(
+                mark(BOB, new float[]{1, 2, 3}),
+                mark(ALICE, new float[]{4, 5, 6})), SUBJECTS);
+
+        assertEquals(2, gallery.size());
+        assertEquals(3, gallery.getDimension());
+        assertArrayEquals(new float[]{1, 2, 3, 4, 5, 6}, gallery.vectors(), 0);
+        assertEquals("Bob", gallery.getSubjectName(0));
+        assertEquals("Alice", gallery.getSubjectName(1));
+        assertArrayEquals(new float[]{4, 5, 6}, gallery.row(1), 0);
+    }
+
+    @Test
+    public void skipsMarksThatCannotMatch() {
+        Gallery gallery = Gallery.of(Arrays.asList(
+                mark(ALICE, null),
+                mark(UUID.randomUUID(), new float[]{1, 1}),
+                mark(BOB, new float[]{2, 2})), SUBJECTS);
+
+        assertEquals(1, gallery.size());
+        assertEquals("Bob", gallery.getSubjectName(0));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsMixedDimensions() {
+        Gallery.of(Arrays.asList(mark(ALICE, new float[]{1, 2}), mark(BOB, new float[]{1, 2, 3})), SUBJECTS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsPackedRowsOfWrongLength() {
+        Gallery.of(2, new float[5], new int[2], SUBJECTS);
+    }
+
+    @Test
+    public void concatMergesSubjectsById() {
+        UUID carol = UUID.randomUUID();
+        Gallery first = Gallery.of(2, new float[]{1, 0}, new int[]{0}, SUBJECTS);
+        Gallery second = Gallery.of(2, new float[]{0, 1, 1, 1}, new int[]{0, 1},
+                new SubjectTable(new UUID[]{BOB, carol}, new String[]{"Bob", "Carol"}));
+
+        Gallery merged = first.concat(second);
+
+        assertEquals(3, merged.size());
+        assertEquals(3, merged.getSubjects().size());
+        assertEquals("Alice", merged.getSubjectName(0));
+        assertEquals("Bob", merged.getSubjectName(1));
+        assertEquals("Carol", merged.getSubjectName(2));
+        assertArrayEquals(new float[]{1, 0, 0, 1, 1, 1}, merged.vectors(), 0);
+    }
+
+    private static FaceMark mark(UUID subjectId, float[] descriptor) {
+        PwFaceData faceData = mock(PwFaceData.class);
+        when(faceData.getDescriptor()).thenReturn(descriptor != null
+                ? Optional.of(new PwFaceDescriptor(descriptor, 1))
+                : Optional.empty());
+        FaceMark mark = mock(FaceMark.class);
+        when(mark.getSubjectId()).thenReturn(subjectId);
+        when(mark.getPwFaceData()).thenReturn(faceData);
+        return mark;
+    }
+}
@@ -0,0 +1,102 @@
+package greeting.robot.server.gallery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Enrolls descriptors into a {@link LiveGallery} while reader threads keep identifying,
+ * then prints the enrollment throughput next to the identify latency percentiles.
+ * <p>
+ * Usage: {@code LiveEnrollmentBenchmark [gallerySize] [enrollments] [readers]}
+ */
+public class LiveEnrollmentBenchmark {
+    private static final int DIMENSION = 128;
+
+    public static void main(String[] args) throws InterruptedException {
+        int gallerySize = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int enrollments = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+        int readers = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+
+        Random random = new Random(1);
+        float[] vectors = new float[gallerySize * DIMENSION];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = (float) random.nextGaussian();
+        }
+        int[] subjectIndices = new int[gallerySize];
+        Gallery gallery = Gallery.of(DIMENSION, vectors, subjectIndices,
+                new SubjectTable(new UUID[]{UUID.randomUUID()}, new String[]{"base"}));
+
+        GalleryProperties properties = new GalleryProperties();
+        GalleryScanner scanner = GalleryScanner.create(properties);
+        LiveGallery liveGallery = new LiveGallery(Matcher.build(gallery, SimilarityMetric.COSINE, properties),
+                properties.getCompactThreshold());
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch done = new CountDownLatch(readers);
+        List<long[]> latencies = new ArrayList<>();
+        for (int r = 0; r < readers; r++) {
+            long[] samples = new long[1 << 20];
+            latencies.add(samples);
+            int seed = r;
+            new Thread(() -> {
+                Random queries = new Random(seed);
+                float[] query = new float[DIMENSION];
+                int count = 0;
+                while (running.get() && count < samples.length - 1) {
+                    for (int i = 0; i < DIMENSION; i++) {
+                        query[i] = (float) queries.nextGaussian();
+                    }
+                    long start = System.nanoTime();
+                    liveGallery.identify(query, 3, Float.NEGATIVE_INFINITY, scanner);
+                    samples[++count] = System.nanoTime() - start;
+                }
+                samples[0] = count;
+                done.countDown();
+            }).start();
+        }
+
+        long start = System.nanoTime();
+        float[] descriptor = new float[DIMENSION];
+        for (int e = 0; e < enrollments; e++) {
+            for (int i = 0; i < DIMENSION; i++) {
+                descriptor[i] = (float) random.nextGaussian();
+            }
+            liveGallery.enroll(UUID.randomUUID(), "enrolled-" + e, descriptor);
+        }
+        long enrollNanos = System.nanoTime() - start;
+        running.set(false);
+        done.await();
+        liveGallery.close();
+
+        long total = 0;
+        for (long[] samples : latencies) {
+            total += samples[0];
+        }
+        long[] all = new long[(int) total];
+        int offset = 0;
+        for (long[] samples : latencies) {
+            System.arraycopy(samples, 1, all, offset, (int) samples[0]);
+            offset += samples[0];
+        }
+        Arrays.sort(all);
+
+        System.out.printf("gallery %d, enrolled %d in %.1f ms (%.0f/s), delta left %d, version %d%n",
+                gallerySize, enrollments, enrollNanos / 1e6, enrollments / (enrollNanos / 1e9),
+                liveGallery.deltaSize(), liveGallery.version());
+        System.out.printf("identify x%d: p50 %.3f ms, p99 %.3f ms, max %.3f ms%n", all.length,
+                percentile(all, 0.5), percentile(all, 0.99), all.length == 0 ? 0 : all[all.length - 1] / 1e6);
+        scanner.preDestroy();
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, Math.round(quantile * sorted.length))] / 1e6;
+    }
+}
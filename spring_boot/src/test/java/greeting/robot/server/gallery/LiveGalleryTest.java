@@ -0,0 +1,141 @@
+package greeting.robot.server.gallery;
+
+import greeting.robot.data.api.Result;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class LiveGalleryTest {
+    private static final int DIMENSION = 16;
+
+    @Test
+    public void enrolledRowsOfAFoundSubjectDoNotCrowdOutOthers() {
+        GalleryProperties properties = new GalleryProperties();
+        properties.getSubjectFilter().setEnabled(true);
+        Gallery base = Gallery.of(2, new float[]{
+                1, 0,
+                0.9f, 0.44f,
+                0.6f, 0.8f}, new int[]{0, 1, 2}, new SubjectTable(
+                new UUID[]{UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID()},
+                new String[]{"Alice", "Bob", "Carol"}));
+        LiveGallery gallery = new LiveGallery(Matcher.build(base, SimilarityMetric.COSINE, properties), 1000);
+        gallery.enroll(EnrollmentLog.subjectId("Alice"), "Alice", new float[]{1, 0.01f});
+        gallery.enroll(EnrollmentLog.subjectId("Alice"), "Alice", new float[]{1, 0.02f});
+
+        List<Result> results = gallery.identify(new float[]{1, 0}, 2, 0, null);
+
+        assertEquals(2, results.size());
+        assertEquals("Alice", results.get(0).getName());
+        assertEquals("Bob", results.get(1).getName());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsQueryOfAnotherDimension() {
+        GalleryProperties properties = new GalleryProperties();
+        properties.getSubjectFilter().setEnabled(true);
+        Gallery base = Gallery.of(2, new float[]{1, 0}, new int[]{0},
+                new SubjectTable(new UUID[]{UUID.randomUUID()}, new String[]{"Alice"}));
+        new LiveGallery(Matcher.build(base, SimilarityMetric.COSINE, properties), 1000)
+                .identify(new float[]{1, 0, 0}, 1, 0, null);
+    }
+
+    @Test
+    public void enrolledRowsStayFindableExactlyOnceAcrossCompactions() throws Exception {
+        int baseRows = 100;
+        int enrollments = 300;
+        int compactThreshold = 20;
+        Random random = new Random(11);
+        float[][] baseVectors = new float[baseRows][];
+        float[] packed = new float[baseRows * DIMENSION];
+        UUID[] ids = new UUID[baseRows];
+        String[] names = new String[baseRows];
+        int[] subjects = new int[baseRows];
+        for (int row = 0; row < baseRows; row++) {
+            baseVectors[row] = randomVector(random);
+            System.arraycopy(baseVectors[row], 0, packed, row * DIMENSION, DIMENSION);
+            ids[row] = UUID.randomUUID();
+            names[row] = "base-" + row;
+            subjects[row] = row;
+        }
+        float[][] enrolledVectors = new float[enrollments][];
+        for (int i = 0; i < enrollments; i++) {
+            enrolledVectors[i] = randomVector(random);
+        }
+        GalleryProperties properties = new GalleryProperties();
+        GalleryScanner scanner = GalleryScanner.create(properties);
+        LiveGallery gallery = new LiveGallery(Matcher.build(Gallery.of(DIMENSION, packed, subjects,
+                new SubjectTable(ids, names)), SimilarityMetric.COSINE, properties), compactThreshold);
+        AtomicInteger enrolled = new AtomicInteger();
+        Queue<String> failures = new ConcurrentLinkedQueue<>();
+        ExecutorService identifiers = Executors.newFixedThreadPool(3);
+        try {
+            // identifiers keep looking up rows already enrolled while enrollment triggers compactions
+            Runnable identify = () -> {
+                while (!Thread.currentThread().isInterrupted() && failures.size() < 10) {
+                    int visible = enrolled.get();
+                    if (visible == 0) {
+                        continue;
+                    }
+                    int i = ThreadLocalRandom.current().nextInt(visible);
+                    List<Result> results = gallery.identify(enrolledVectors[i], 1, 0, scanner);
+                    if (results.isEmpty() || !results.get(0).getName().equals("enrolled-" + i)) {
+                        failures.add("enrolled-" + i + " not found: " + results);
+                    }
+                }
+            };
+            for (int i = 0; i < 3; i++) {
+                identifiers.execute(identify);
+            }
+            for (int i = 0; i < enrollments; i++) {
+                String name = "enrolled-" + i;
+                gallery.enroll(EnrollmentLog.subjectId(name), name, enrolledVectors[i]);
+                enrolled.incrementAndGet();
+                if (i % 10 == 0) {
+                    Thread.sleep(1);
+                }
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (gallery.getBase().getGallery().size() == baseRows && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue("no compaction happened", gallery.getBase().getGallery().size() > baseRows);
+            Thread.sleep(100);
+        } finally {
+            identifiers.shutdownNow();
+            assertTrue(identifiers.awaitTermination(5, TimeUnit.SECONDS));
+        }
+        assertTrue(failures.toString(), failures.isEmpty());
+
+        assertEquals(baseRows + enrollments, gallery.size());
+        for (int i = 0; i < enrollments; i++) {
+            List<Result> results = gallery.identify(enrolledVectors[i], 2, 0, scanner);
+            assertEquals("enrolled-" + i, results.get(0).getName());
+            assertNotEquals("enrolled-" + i + " is there twice", "enrolled-" + i, results.get(1).getName());
+        }
+        for (int row = 0; row < baseRows; row++) {
+            assertEquals("base-" + row, gallery.identify(baseVectors[row], 1, 0, scanner).get(0).getName());
+        }
+        gallery.close();
+        scanner.preDestroy();
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
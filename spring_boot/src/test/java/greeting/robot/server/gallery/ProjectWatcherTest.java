@@ -0,0 +1,88 @@
+package greeting.robot.server.gallery;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProjectWatcherTest {
+    private static final long DEBOUNCE_MS = 200;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String> reported = new CopyOnWriteArrayList<>();
+
+    @Test
+    public void reportsSeveralWritesOnceTheyStop() throws IOException, InterruptedException {
+        Path project = project("main");
+        try (ProjectWatcher watcher = new ProjectWatcher(DEBOUNCE_MS, reported::add)) {
+            watcher.watch("main", project);
+            long lastWrite = 0;
+            for (int i = 0; i < 5; i++) {
+                Files.write(project, new byte[i + 1]);
+                lastWrite = System.nanoTime();
+                Thread.sleep(DEBOUNCE_MS / 4);
+            }
+            awaitReports(1);
+            long quietMs = (System.nanoTime() - lastWrite) / 1000000;
+            assertTrue("reported " + quietMs + " ms after the last write", quietMs >= DEBOUNCE_MS);
+
+            Thread.sleep(3 * DEBOUNCE_MS);
+            assertEquals(1, reported.size());
+            assertEquals("main", reported.get(0));
+        }
+    }
+
+    @Test
+    public void ignoresOtherFilesOfTheDirectory() throws IOException, InterruptedException {
+        Path project = project("main");
+        try (ProjectWatcher watcher = new ProjectWatcher(DEBOUNCE_MS, reported::add)) {
+            watcher.watch("main", project);
+            Files.write(project.resolveSibling("notes.txt"), new byte[1]);
+            Thread.sleep(3 * DEBOUNCE_MS);
+            assertEquals(0, reported.size());
+        }
+    }
+
+    @Test
+    public void stopsReportingUnwatchedGalleries() throws IOException, InterruptedException {
+        Path dropped = project("dropped");
+        Path kept = project("kept");
+        try (ProjectWatcher watcher = new ProjectWatcher(DEBOUNCE_MS, reported::add)) {
+            watcher.watch("dropped", dropped);
+            watcher.watch("kept", kept);
+            watcher.unwatch("dropped");
+
+            Files.write(dropped, new byte[2]);
+            Files.write(kept, new byte[2]);
+            awaitReports(1);
+            Thread.sleep(3 * DEBOUNCE_MS);
+
+            assertEquals(1, reported.size());
+            assertEquals("kept", reported.get(0));
+        }
+    }
+
+    private Path project(String gallery) throws IOException {
+        Path project = folder.newFolder(gallery).toPath().resolve("project.biow");
+        Files.write(project, new byte[1]);
+        return project;
+    }
+
+    private void awaitReports(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 20000;
+        while (reported.size() < count) {
+            assertTrue("not reported in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+}
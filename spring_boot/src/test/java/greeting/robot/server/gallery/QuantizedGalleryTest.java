@@ -0,0 +1,101 @@
+package greeting.robot.server.gallery;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class QuantizedGalleryTest {
+    private static final int DIMENSION = 128;
+    private static final int SIZE = 500;
+
+    @Test
+    public void everyHalfSurvivesTheRoundTrip() {
+        for (int bits = 0; bits < 1 << 16; bits++) {
+            float value = QuantizedGallery.halfToFloat((short) bits);
+            if (!Float.isNaN(value)) {
+                assertEquals(Integer.toHexString(bits), (short) bits, QuantizedGallery.floatToHalf(value));
+            }
+        }
+    }
+
+    @Test
+    public void floatsRoundToNearestHalf() {
+        Random random = new Random(2);
+        for (int i = 0; i < 100000; i++) {
+            float value = (float) (random.nextGaussian() * Math.pow(10, random.nextInt(8) - 4));
+            float rounded = QuantizedGallery.halfToFloat(QuantizedGallery.floatToHalf(value));
+            // 11 significant bits in the normal range, a fixed step of 2^-24 below it
+            assertEquals(value, rounded, Math.max(Math.abs(value) / 2048, 0x1p-25f));
+        }
+        assertEquals(Float.POSITIVE_INFINITY, QuantizedGallery.halfToFloat(QuantizedGallery.floatToHalf(1e6f)), 0);
+        assertTrue(Float.isNaN(QuantizedGallery.halfToFloat(QuantizedGallery.floatToHalf(Float.NaN))));
+    }
+
+    @Test
+    public void quantisedScoresStayCloseToExactOnes() {
+        Random random = new Random(8);
+        Gallery gallery = randomGallery(random);
+        float[] query = randomVector(random);
+        assertScoreError(gallery, QuantizedGallery.of(gallery, QuantizedGallery.Mode.INT8), query, 0.01f);
+        assertScoreError(gallery, QuantizedGallery.of(gallery, QuantizedGallery.Mode.FLOAT16), query, 0.001f);
+    }
+
+    @Test
+    public void dequantisedRowsQuantiseToTheSameRows() {
+        Gallery gallery = randomGallery(new Random(1));
+        for (QuantizedGallery.Mode mode : QuantizedGallery.Mode.values()) {
+            float[] dequantized = QuantizedGallery.of(gallery, mode).dequantize();
+            float[] again = QuantizedGallery.of(gallery.withVectors(dequantized), mode).dequantize();
+            assertArrayEquals(mode.name(), dequantized, again, 0);
+        }
+    }
+
+    @Test
+    public void withoutRerankOnlyQuantisedRowsAreKept() {
+        Random random = new Random(3);
+        Gallery gallery = randomGallery(random);
+        GalleryProperties properties = new GalleryProperties();
+        properties.setQuantization(GalleryProperties.Quantization.INT8);
+        properties.setRerank(0);
+
+        Matcher matcher = Matcher.build(gallery, SimilarityMetric.COSINE, properties);
+
+        assertFalse(matcher.getGallery().hasVectors());
+        assertTrue(matcher.sizeInBytes() < gallery.sizeInBytes() / 2);
+        assertEquals(SIZE, matcher.toGallery().size());
+        GalleryScanner scanner = GalleryScanner.create(properties);
+        float[] query = randomVector(random);
+        TopK top = matcher.search(query, 5, Float.NEGATIVE_INFINITY, scanner).sort();
+        assertEquals(5, top.size());
+    }
+
+    private static void assertScoreError(Gallery gallery, QuantizedGallery quantized, float[] query, float maxError) {
+        TopK top = new TopK(SIZE, Float.NEGATIVE_INFINITY);
+        quantized.scan(query, SimilarityMetric.COSINE, 0, SIZE, top);
+        for (int i = 0; i < top.size(); i++) {
+            float exact = gallery.score(query, top.row(i), SimilarityMetric.COSINE);
+            assertEquals(quantized.getMode().name(), exact, top.score(i), maxError);
+        }
+    }
+
+    private static Gallery randomGallery(Random random) {
+        float[] vectors = new float[SIZE * DIMENSION];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = (float) random.nextGaussian();
+        }
+        return Gallery.of(DIMENSION, vectors, new int[SIZE], SubjectTable.empty());
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
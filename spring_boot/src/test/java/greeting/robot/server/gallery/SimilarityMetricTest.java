@@ -0,0 +1,64 @@
+package greeting.robot.server.gallery;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class SimilarityMetricTest {
+    private static final int DIMENSION = 128;
+
+    @Test
+    public void fromDotReproducesScore() {
+        Random random = new Random(11);
+        for (SimilarityMetric metric : SimilarityMetric.values()) {
+            for (int i = 0; i < 100; i++) {
+                float[] a = randomVector(random);
+                float[] b = randomVector(random);
+                float expected = metric.score(a, b);
+                float actual = metric.fromDot(dot(a, b), dot(a, a), dot(b, b));
+                assertEquals(metric.name(), expected, actual, 1e-4f * Math.max(1, Math.abs(expected)));
+            }
+        }
+    }
+
+    @Test
+    public void identicalVectorsScoreBest() {
+        float[] a = randomVector(new Random(5));
+        assertEquals(1, SimilarityMetric.COSINE.score(a, a), 1e-6f);
+        assertEquals(1, SimilarityMetric.EUCLIDEAN.score(a, a), 0);
+        assertEquals(dot(a, a), SimilarityMetric.DOT.score(a, a), 1e-3f);
+    }
+
+    @Test
+    public void cosineOfZeroVectorIsZero() {
+        float[] zero = new float[DIMENSION];
+        float[] a = randomVector(new Random(6));
+        assertEquals(0, SimilarityMetric.COSINE.score(zero, a), 0);
+        assertEquals(0, SimilarityMetric.COSINE.fromDot(0, 0, dot(a, a)), 0);
+    }
+
+    @Test
+    public void dotHandlesDimensionsNotDivisibleByFour() {
+        float[] a = {1, 2, 3, 4, 5, 6, 7};
+        float[] b = {7, 6, 5, 4, 3, 2, 1};
+        assertEquals(84, SimilarityMetric.DOT.score(a, b), 0);
+    }
+
+    private static float dot(float[] a, float[] b) {
+        float sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,61 @@
+package greeting.robot.server.gallery;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+
+public class SubjectCentroidsTest {
+    private static final SubjectTable SUBJECTS = new SubjectTable(
+            new UUID[]{UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID()},
+            new String[]{"Alice", "Bob", "Carol"});
+    private static final Gallery GALLERY = Gallery.of(2, new float[]{
+            1, 0,
+            0.99f, 0.14f,
+            0.98f, 0.2f,
+            0, 1,
+            0.7f, 0.7f}, new int[]{0, 0, 0, 1, 2}, SUBJECTS);
+
+    @Test
+    public void returnsOneRowPerSubject() {
+        TopK top = SubjectCentroids.of(GALLERY, SimilarityMetric.COSINE)
+                .search(new float[]{1, 0}, SimilarityMetric.COSINE, 3, Float.NEGATIVE_INFINITY, 3).sort();
+
+        assertEquals(3, top.size());
+        assertEquals("Alice", GALLERY.getSubjectName(top.row(0)));
+        assertEquals(0, top.row(0));
+        assertEquals("Carol", GALLERY.getSubjectName(top.row(1)));
+        assertEquals("Bob", GALLERY.getSubjectName(top.row(2)));
+    }
+
+    @Test
+    public void expandsAtLeastKSubjects() {
+        TopK top = SubjectCentroids.of(GALLERY, SimilarityMetric.COSINE)
+                .search(new float[]{1, 0}, SimilarityMetric.COSINE, 3, Float.NEGATIVE_INFINITY, 1).sort();
+
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < top.size(); i++) {
+            names.add(GALLERY.getSubjectName(top.row(i)));
+        }
+        assertEquals(3, names.size());
+    }
+
+    @Test
+    public void cosineCentroidWeighsEveryRowEqually() {
+        // unweighted, Alice's long first row would pull her centroid towards x, behind Bob
+        Gallery gallery = Gallery.of(2, new float[]{
+                10, 0,
+                0, 1,
+                0.8f, 0.6f}, new int[]{0, 0, 1}, SUBJECTS);
+
+        TopK top = SubjectCentroids.of(gallery, SimilarityMetric.COSINE)
+                .search(new float[]{0, 1}, SimilarityMetric.COSINE, 1, Float.NEGATIVE_INFINITY, 1);
+
+        assertEquals(1, top.size());
+        assertEquals(1, top.row(0));
+        assertEquals(1, top.score(0), 1e-6);
+    }
+}
@@ -0,0 +1,87 @@
+package greeting.robot.server.gallery;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TopKTest {
+
+    @Test
+    public void keepsBestScoresBestFirst() {
+        Random random = new Random(9);
+        float[] scores = new float[1000];
+        TopK top = new TopK(10, Float.NEGATIVE_INFINITY);
+        for (int row = 0; row < scores.length; row++) {
+            scores[row] = random.nextFloat();
+            top.offer(row, scores[row]);
+        }
+        top.sort();
+
+        float[] expected = scores.clone();
+        Arrays.sort(expected);
+        assertEquals(10, top.size());
+        for (int i = 0; i < top.size(); i++) {
+            assertEquals(expected[expected.length - 1 - i], top.score(i), 0);
+            assertEquals(scores[top.row(i)], top.score(i), 0);
+        }
+    }
+
+    @Test
+    public void tiesAtTheBoundaryKeepTheFirstOffered() {
+        TopK top = new TopK(2, Float.NEGATIVE_INFINITY);
+        top.offer(0, 0.5f);
+        top.offer(1, 0.5f);
+        top.offer(2, 0.5f);
+        top.offer(3, 0.9f);
+        top.sort();
+
+        assertEquals(2, top.size());
+        assertEquals(3, top.row(0));
+        assertEquals(0.5f, top.score(1), 0);
+    }
+
+    @Test
+    public void dropsNaNAndScoresBelowMinimum() {
+        TopK top = new TopK(5, 0.2f);
+        top.offer(0, Float.NaN);
+        top.offer(1, 0.1f);
+        top.offer(2, 0.3f);
+        top.sort();
+
+        assertArrayEquals(new int[]{2}, top.rows());
+    }
+
+    @Test
+    public void thresholdIsMinimumUntilFull() {
+        TopK top = new TopK(2, 0.1f);
+        top.offer(0, 0.4f);
+        assertEquals(0.1f, top.threshold(), 0);
+        top.offer(1, 0.6f);
+        assertEquals(0.4f, top.threshold(), 0);
+    }
+
+    @Test
+    public void mergeEqualsSingleSelection() {
+        Random random = new Random(4);
+        TopK whole = new TopK(7, Float.NEGATIVE_INFINITY);
+        TopK left = new TopK(7, Float.NEGATIVE_INFINITY);
+        TopK right = new TopK(7, Float.NEGATIVE_INFINITY);
+        for (int row = 0; row < 200; row++) {
+            float score = random.nextFloat();
+            whole.offer(row, score);
+            (row < 100 ? left : right).offer(row, score);
+        }
+        left.merge(right);
+
+        assertArrayEquals(whole.sort().rows(), left.sort().rows());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyCapacity() {
+        new TopK(0, 0);
+    }
+}
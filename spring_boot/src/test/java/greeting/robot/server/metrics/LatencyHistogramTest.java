@@ -0,0 +1,50 @@
+package greeting.robot.server.metrics;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+    private static final double MAX_RELATIVE_ERROR = 1.0 / 32;
+
+    @Test
+    public void quantilesAreWithinBucketPrecision() {
+        Random random = new Random(3);
+        long[] values = new long[100000];
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * Math.log(10_000_000_000L));
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double quantile : new double[]{0.5, 0.95, 0.99, 0.999}) {
+            long expected = values[(int) Math.ceil(quantile * values.length) - 1];
+            long actual = histogram.quantileNanos(quantile);
+            assertTrue(quantile + ": " + actual + " instead of " + expected,
+                    Math.abs(actual - expected) <= Math.max(1, expected * MAX_RELATIVE_ERROR));
+        }
+        assertEquals(values[values.length - 1], histogram.getMaxNanos());
+        assertEquals(values.length, histogram.getCount());
+        assertEquals(Arrays.stream(values).sum(), histogram.getSumNanos());
+    }
+
+    @Test
+    public void everyValueFallsIntoABucketContainingIt() {
+        for (long value : new long[]{0, 1, 15, 16, 17, 31, 32, 1000, 123456789, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.index(value);
+            long midpoint = LatencyHistogram.midpoint(index);
+            assertTrue(value + " -> " + midpoint,
+                    Math.abs(midpoint - value) <= Math.max(1, value * MAX_RELATIVE_ERROR));
+        }
+    }
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        assertEquals(0, new LatencyHistogram().quantileNanos(0.99));
+    }
+}